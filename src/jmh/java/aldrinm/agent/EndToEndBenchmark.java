@@ -0,0 +1,98 @@
+package aldrinm.agent;
+
+import aldrinm.agent.benchmark.AgentFixture;
+import aldrinm.agent.benchmark.BenchmarkGraph;
+import aldrinm.agent.benchmark.FakeLlm;
+import com.embabel.agent.api.common.OperationContext;
+import com.embabel.agent.domain.io.UserInput;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers batches of scripted questions, several at a time, with the fake LLM and the stub MCP servers in front of an
+ * embedded Neo4j. Some of the questions need a rectify round, which the repairer can do without the LLM. The actions
+ * are run in the order the planner runs them, so the planning itself is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private final static int MAX_RECTIFY_ROUNDS = 5;
+
+    @Param({"1", "8", "64"})
+    public int concurrency;
+
+    @Param({"false", "true"})
+    public boolean resultCache;
+
+    @Param({"false", "true"})
+    public boolean repair;
+
+    @Param({"100"})
+    public int llmLatencyMs;
+
+    @Param({"20"})
+    public int toolLatencyMs;
+
+    private BenchmarkGraph graph;
+    private GraphAgent graphAgent;
+    private ExecutorService executor;
+    private final AtomicInteger nextQuestion = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+        graph = new BenchmarkGraph();
+        graphAgent = new AgentFixture(BenchmarkGraph.schema(100), Duration.ofMillis(toolLatencyMs), graph.driver(), resultCache, repair)
+                .graphAgent();
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        graph.close();
+    }
+
+    /**
+     * Answers as many questions as the concurrency, all at once
+     */
+    @Benchmark
+    public void answer(Blackhole blackhole) throws Exception {
+        List<Future<FormattedResponse>> answers = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            FakeLlm.ScriptedQuestion question = FakeLlm.QUESTIONS.get(Math.floorMod(nextQuestion.getAndIncrement(), FakeLlm.QUESTIONS.size()));
+            answers.add(executor.submit(() -> answer(question.question())));
+        }
+        for (Future<FormattedResponse> answer : answers) {
+            blackhole.consume(answer.get());
+        }
+    }
+
+    private FormattedResponse answer(String question) {
+        OperationContext context = FakeLlm.operationContext(Duration.ofMillis(llmLatencyMs));
+        UserInput userInput = new UserInput(question);
+        CypherStatementRequest cypherStatementRequest = graphAgent.generateCypher(userInput, context);
+        ValidationReport validationReport = graphAgent.validateCypher(cypherStatementRequest, userInput, context);
+        for (int i = 0; i < MAX_RECTIFY_ROUNDS && !GraphAgent.validationReportPasses(validationReport); i++) {
+            cypherStatementRequest = graphAgent.rectifyCypher(cypherStatementRequest, validationReport, userInput, context);
+            validationReport = graphAgent.validateCypher(cypherStatementRequest, userInput, context);
+        }
+        if (!GraphAgent.validationReportPasses(validationReport)) {
+            throw new IllegalStateException("Could not answer: " + question);
+        }
+        return graphAgent.formatResponse(graphAgent.executeCypher(cypherStatementRequest, userInput, context), userInput, context);
+    }
+}
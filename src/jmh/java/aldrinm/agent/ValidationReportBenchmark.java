@@ -0,0 +1,52 @@
+package aldrinm.agent;
+
+import aldrinm.agent.benchmark.StubMcpClients;
+import aldrinm.agent.validation.CypherValidationPipeline;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deciding whether a validation report passes, and turning a failing one into feedback for the LLM
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationReportBenchmark {
+
+    private final static String CYPHER = "MATCH (m:Minifigs)-[:IN_SET]->(s:Set) RETURN m.name LIMIT 20";
+
+    private ValidationReport passing;
+    private ValidationReport failing;
+
+    @Setup
+    public void setUp() {
+        passing = report(true);
+        failing = report(false);
+    }
+
+    private static ValidationReport report(boolean valid) {
+        return new ValidationReport(
+                StubMcpClients.validationResult(CypherValidationPipeline.SYNTAX_VALIDATOR, CYPHER, true),
+                StubMcpClients.validationResult(CypherValidationPipeline.SCHEMA_VALIDATOR, CYPHER, valid),
+                StubMcpClients.validationResult(CypherValidationPipeline.PROPERTIES_VALIDATOR, CYPHER, valid));
+    }
+
+    @Benchmark
+    public boolean passes() {
+        return GraphAgent.validationReportPasses(passing);
+    }
+
+    @Benchmark
+    public boolean fails() {
+        return GraphAgent.validationReportPasses(failing);
+    }
+
+    @Benchmark
+    public String feedback() {
+        return GraphAgent.formatFeedbackIfAny(failing);
+    }
+}
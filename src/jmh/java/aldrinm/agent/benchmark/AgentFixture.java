@@ -0,0 +1,92 @@
+package aldrinm.agent.benchmark;
+
+import aldrinm.agent.GraphAgent;
+import aldrinm.agent.RectifyLoopControl;
+import aldrinm.agent.RunTracker;
+import aldrinm.agent.SpeculativeCypherGenerator;
+import aldrinm.agent.cache.CypherResultCache;
+import aldrinm.agent.concurrency.ConcurrencyLimits;
+import aldrinm.agent.cyver.CyverClientPool;
+import aldrinm.agent.database.DatabaseRouter;
+import aldrinm.agent.execution.CypherExecutor;
+import aldrinm.agent.format.AnswerStreamer;
+import aldrinm.agent.format.ResultFormatter;
+import aldrinm.agent.memory.CorrectionStore;
+import aldrinm.agent.mcp.McpToolRegistry;
+import aldrinm.agent.metrics.AgentMetrics;
+import aldrinm.agent.recording.CallRecorder;
+import aldrinm.agent.progress.AgentProgress;
+import aldrinm.agent.repair.CypherRepairer;
+import aldrinm.agent.schema.SchemaCache;
+import aldrinm.agent.validation.CypherPlanGuard;
+import aldrinm.agent.validation.CypherValidationPipeline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.neo4j.driver.Driver;
+import org.springframework.ai.mcp.client.autoconfigure.properties.McpStdioClientProperties;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The agent and its components wired by hand, as Spring would with the default settings, on top of the stub MCP
+ * clients and the given Neo4j driver
+ */
+public final class AgentFixture {
+
+    private final AgentMetrics metrics = new AgentMetrics(new SimpleMeterRegistry());
+    private final ConcurrencyLimits limits = ConcurrencyLimits.unlimited();
+    private final CallRecorder callRecorder = new CallRecorder("off", "", Duration.ZERO, Duration.ZERO);
+    private final McpToolRegistry toolRegistry;
+    private final CypherValidationPipeline validationPipeline;
+    private final SchemaCache schemaCache;
+    private final CypherExecutor cypherExecutor;
+    private final GraphAgent graphAgent;
+
+    public AgentFixture(String schema, Duration toolLatency, Driver driver, boolean resultCacheEnabled, boolean repairEnabled) {
+        var mcpClients = List.of(StubMcpClients.neo4jClient(schema, toolLatency),
+                StubMcpClients.cyverClient(FakeLlm::isValid, toolLatency));
+        CyverClientPool cyverClientPool = new CyverClientPool(mcpClients, Optional.of(new McpStdioClientProperties()), 1,
+                CyverClientPool.SERVER_NAME, Duration.ofSeconds(30), Duration.ZERO, event -> {});
+        this.toolRegistry = new McpToolRegistry(mcpClients, cyverClientPool, metrics, callRecorder, List.of());
+        this.validationPipeline = new CypherValidationPipeline(toolRegistry,
+                new CypherPlanGuard(driver, limits, true, "", 1_000_000, 10_000, Duration.ofSeconds(5)), metrics, limits,
+                Duration.ofSeconds(30), false);
+        this.schemaCache = new SchemaCache(toolRegistry, Neo4jClient.create(driver), Duration.ofMinutes(10), Duration.ZERO, true, 2000);
+        this.cypherExecutor = new CypherExecutor(driver, metrics, limits, "", 1000, DataSize.ofMegabytes(1), Duration.ofSeconds(30));
+        CypherResultCache resultCache = new CypherResultCache(schemaCache, resultCacheEnabled, 1000, "", Duration.ZERO);
+        SpeculativeCypherGenerator speculativeGenerator = new SpeculativeCypherGenerator(limits, callRecorder, false, 1,
+                List.of("fake"), List.of(0.0));
+        CypherRepairer cypherRepairer = new CypherRepairer(schemaCache, repairEnabled);
+        DatabaseRouter databases = new DatabaseRouter(schemaCache, validationPipeline, resultCache, cypherExecutor, cypherRepairer,
+                toolRegistry, cyverClientPool, driver, Optional.empty(), callRecorder, true, "", "mcp-neo4j-cypher",
+                Duration.ofSeconds(30), Duration.ZERO, List.of());
+        RunTracker runTracker = new RunTracker();
+        this.graphAgent = new GraphAgent(databases, speculativeGenerator, new ResultFormatter(true, 10, 4),
+                new AnswerStreamer(null, metrics, false, Duration.ofSeconds(60)), new AgentProgress(event -> {
+                }, runTracker), new CorrectionStore(false, "", 3, 0.25), callRecorder,
+                new RectifyLoopControl(8, Duration.ofMinutes(2), 0, 2, "", "fake"), limits, metrics, runTracker);
+    }
+
+    public McpToolRegistry toolRegistry() {
+        return toolRegistry;
+    }
+
+    public CypherValidationPipeline validationPipeline() {
+        return validationPipeline;
+    }
+
+    public SchemaCache schemaCache() {
+        return schemaCache;
+    }
+
+    public CypherExecutor cypherExecutor() {
+        return cypherExecutor;
+    }
+
+    public GraphAgent graphAgent() {
+        return graphAgent;
+    }
+}
@@ -0,0 +1,83 @@
+package aldrinm.agent.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.GraphDatabase;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small Lego graph (themes, sets and minifigs) in an embedded Neo4j, along with its schema in the apoc.meta.schema
+ * form returned by get_neo4j_schema. The schema can be padded with unrelated labels to see how the schema handling
+ * scales.
+ */
+public final class BenchmarkGraph implements AutoCloseable {
+
+    public final static int THEMES = 50;
+    public final static int SETS = 500;
+    public final static int MINIFIGS = 5000;
+
+    private final Neo4j neo4j;
+    private final Driver driver;
+
+    public BenchmarkGraph() {
+        this.neo4j = Neo4jBuilders.newInProcessBuilder()
+                .withDisabledServer()
+                .withFixture("UNWIND range(1, " + THEMES + ") AS i CREATE (:Theme {id: i, name: 'Theme ' + i})")
+                .withFixture("UNWIND range(1, " + SETS + ") AS i MATCH (t:Theme {id: i % " + THEMES + " + 1}) "
+                        + "CREATE (:Set {id: i, name: 'Set ' + i, year: 1990 + i % 30})-[:HAS_THEME]->(t)")
+                .withFixture("UNWIND range(1, " + MINIFIGS + ") AS i MATCH (s:Set {id: i % " + SETS + " + 1}) "
+                        + "CREATE (:Minifig {id: i, name: 'Minifig ' + i, numParts: i % 12 + 1})-[:IN_SET {quantity: i % 3 + 1}]->(s)")
+                .build();
+        this.driver = GraphDatabase.driver(neo4j.boltURI(), AuthTokens.none());
+    }
+
+    public Driver driver() {
+        return driver;
+    }
+
+    /**
+     * @return the schema of the graph as JSON, padded with the given number of unrelated labels
+     */
+    public static String schema(int extraLabels) {
+        Map<String, Object> schema = new LinkedHashMap<>();
+        schema.put("Minifig", node(Map.of("id", "INTEGER", "name", "STRING", "numParts", "INTEGER"),
+                Map.of("IN_SET", Map.of("direction", "out", "labels", List.of("Set")))));
+        schema.put("Set", node(Map.of("id", "INTEGER", "name", "STRING", "year", "INTEGER"),
+                Map.of("IN_SET", Map.of("direction", "in", "labels", List.of("Minifig")),
+                        "HAS_THEME", Map.of("direction", "out", "labels", List.of("Theme")))));
+        schema.put("Theme", node(Map.of("id", "INTEGER", "name", "STRING"),
+                Map.of("HAS_THEME", Map.of("direction", "in", "labels", List.of("Set")))));
+        schema.put("IN_SET", Map.of("type", "relationship", "count", MINIFIGS,
+                "properties", Map.of("quantity", Map.of("type", "INTEGER", "indexed", false))));
+        schema.put("HAS_THEME", Map.of("type", "relationship", "count", SETS, "properties", Map.of()));
+        for (int i = 0; i < extraLabels; i++) {
+            String next = "Label" + ((i + 1) % extraLabels);
+            schema.put("Label" + i, node(Map.of("code" + i, "STRING", "weight" + i, "FLOAT", "createdAt", "DATE_TIME"),
+                    Map.of("LINKS_TO_" + i, Map.of("direction", "out", "labels", List.of(next)))));
+        }
+        try {
+            return JsonMapper.builder().build().writeValueAsString(schema);
+        } catch (JsonProcessingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static Map<String, Object> node(Map<String, String> properties, Map<String, Object> relationships) {
+        Map<String, Object> described = new LinkedHashMap<>();
+        properties.forEach((name, type) -> described.put(name, Map.of("type", type, "indexed", false, "unique", false)));
+        return Map.of("type", "node", "count", 100, "properties", described, "relationships", relationships);
+    }
+
+    @Override
+    public void close() {
+        driver.close();
+        neo4j.close();
+    }
+}
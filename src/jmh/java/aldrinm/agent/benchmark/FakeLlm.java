@@ -0,0 +1,95 @@
+package aldrinm.agent.benchmark;
+
+import aldrinm.agent.CypherStatementRequest;
+import com.embabel.agent.api.common.OperationContext;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * A stand-in for the LLM that answers each question with scripted cypher after a fixed delay. Questions with a first
+ * attempt are answered wrongly first, and correctly once asked to rectify that attempt.
+ */
+public final class FakeLlm {
+
+    public record ScriptedQuestion(String question, String cypher, @Nullable String firstAttempt) {
+    }
+
+    public final static List<ScriptedQuestion> QUESTIONS = List.of(
+            new ScriptedQuestion("How many minifigs are available ?",
+                    "MATCH (n:Minifig) RETURN count(n) AS numMinifigs", null),
+            new ScriptedQuestion("Which minifigs have the most parts ?",
+                    "MATCH (n:Minifig) RETURN n.name, n.numParts ORDER BY n.numParts DESC LIMIT 20",
+                    "MATCH (n:Minifigs) RETURN n.name, n.numParts ORDER BY n.numParts DESC LIMIT 20"),
+            new ScriptedQuestion("Which sets were released in 2005 ?",
+                    "MATCH (s:Set) WHERE s.year = 2005 RETURN s.name LIMIT 20", null),
+            new ScriptedQuestion("How many minifigs does each theme have ?",
+                    "MATCH (m:Minifig)-[:IN_SET]->(:Set)-[:HAS_THEME]->(t:Theme) RETURN t.name, count(m) AS minifigs ORDER BY minifigs DESC LIMIT 20",
+                    "MATCH (m:Minifigs)-[:IN_SET]->(:Set)-[:HAS_THEME]->(t:Theme) RETURN t.name, count(m) AS minifigs ORDER BY minifigs DESC LIMIT 20"),
+            new ScriptedQuestion("Show the minifigs of Set 7 with their quantities",
+                    "MATCH (m:Minifig)-[r:IN_SET]->(s:Set {name: 'Set 7'}) RETURN m.name, r.quantity LIMIT 20", null),
+            new ScriptedQuestion("Which themes have sets from before 1995 ?",
+                    "MATCH (s:Set)-[:HAS_THEME]->(t:Theme) WHERE s.year < 1995 RETURN DISTINCT t.name LIMIT 20", null),
+            new ScriptedQuestion("List the paths from minifigs to themes",
+                    "MATCH p = (:Minifig)-[:IN_SET]->(:Set)-[:HAS_THEME]->(:Theme) RETURN p LIMIT 20",
+                    "MATCH p = (:Minifigs)-[:IN_SET]->(:Set)-[:HAS_THEME]->(:Theme) RETURN p LIMIT 20"),
+            new ScriptedQuestion("What is the average number of parts of a minifig ?",
+                    "MATCH (n:Minifig) RETURN avg(n.numParts) AS averageParts", null)
+    );
+
+    private FakeLlm() {
+    }
+
+    /**
+     * The cypher the scripted questions fail with use a label that is not in the schema
+     */
+    public static boolean isValid(String cypher) {
+        return !cypher.contains(":Minifigs");
+    }
+
+    /**
+     * @return a fresh context for one question, answering LLM calls from the script. Creating it takes a few tens of
+     * microseconds, which is small next to any realistic LLM latency.
+     */
+    public static OperationContext operationContext(Duration latency) {
+        OperationContext context = mock(OperationContext.class, withSettings().stubOnly().defaultAnswer(RETURNS_DEEP_STUBS));
+        Map<String, Object> blackboard = new ConcurrentHashMap<>();
+        doAnswer(invocation -> blackboard.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(context).set(anyString(), any());
+        when(context.get(anyString())).thenAnswer(invocation -> blackboard.get(invocation.<String>getArgument(0)));
+        when(context.getProcessContext().getAgentProcess().getLlmInvocations()).thenReturn(List.of());
+
+        when(context.ai().withAutoLlm().createObject(anyString(), eq(CypherStatementRequest.class))).thenAnswer(invocation -> {
+            StubMcpClients.sleep(latency);
+            return new CypherStatementRequest(cypherFor(invocation.getArgument(0)));
+        });
+        when(context.ai().withAutoLlm().generateText(anyString())).thenAnswer(invocation -> {
+            StubMcpClients.sleep(latency);
+            return "There are 42 minifigs present";
+        });
+        return context;
+    }
+
+    private static String cypherFor(String prompt) {
+        //a rectify prompt carries the failing cypher, a generation prompt the question
+        for (ScriptedQuestion question : QUESTIONS) {
+            if (question.firstAttempt() != null && prompt.contains(question.firstAttempt())) {
+                return question.cypher();
+            }
+        }
+        for (ScriptedQuestion question : QUESTIONS) {
+            if (prompt.contains(question.question())) {
+                return question.firstAttempt() != null ? question.firstAttempt() : question.cypher();
+            }
+        }
+        throw new IllegalArgumentException("No scripted answer for the prompt: " + prompt);
+    }
+}
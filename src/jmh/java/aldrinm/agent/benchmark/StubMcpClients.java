@@ -0,0 +1,102 @@
+package aldrinm.agent.benchmark;
+
+import aldrinm.agent.cyver.CyverClientPool;
+import aldrinm.agent.cyver.CyverSyntaxValidatonResult;
+import aldrinm.agent.validation.CypherValidationPipeline;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.spec.McpSchema;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * In-process stand-ins for the mcp-neo4j-cypher and CyVer servers. They answer with the same JSON text the real
+ * servers do, after an optional delay that stands in for the stdio round-trip, so that everything from the tool
+ * callback onwards runs as it does against the real servers.
+ */
+public final class StubMcpClients {
+
+    public final static String NEO4J_SERVER = "mcp-neo4j-cypher";
+    private final static ObjectMapper objectMapper = JsonMapper.builder().build();
+
+    private StubMcpClients() {
+    }
+
+    /**
+     * A mcp-neo4j-cypher client whose get_neo4j_schema tool returns the given schema
+     */
+    public static McpSyncClient neo4jClient(String schema, Duration latency) {
+        return client(NEO4J_SERVER, List.of("get_neo4j_schema", "read_neo4j_cypher"), latency, request -> schema);
+    }
+
+    /**
+     * A CyVer client whose validators pass the cypher accepted by the predicate and fail the rest
+     */
+    public static McpSyncClient cyverClient(Predicate<String> validCypher, Duration latency) {
+        List<String> tools = List.of(CypherValidationPipeline.SYNTAX_VALIDATOR, CypherValidationPipeline.SCHEMA_VALIDATOR,
+                CypherValidationPipeline.PROPERTIES_VALIDATOR);
+        return client(CyverClientPool.SERVER_NAME, tools, latency, request -> {
+            String cypher = String.valueOf(request.arguments().get("query"));
+            return toJson(validationResult(request.name(), cypher, validCypher.test(cypher)));
+        });
+    }
+
+    public static CyverSyntaxValidatonResult validationResult(String validator, String cypher, boolean valid) {
+        if (valid) {
+            return new CyverSyntaxValidatonResult(validator, cypher, true, 1.0f, List.of());
+        }
+        return new CyverSyntaxValidatonResult(validator, cypher, false, 0.5f,
+                List.of(Map.of("code", "Neo.ClientNotification.Statement.UnknownLabelWarning",
+                        "description", "One of the labels in your query is not available in the database")));
+    }
+
+    private static McpSyncClient client(String name, List<String> toolNames, Duration latency,
+                                        Function<McpSchema.CallToolRequest, String> answer) {
+        //stub only, so that the calls of a long run are not recorded
+        McpSyncClient client = mock(McpSyncClient.class, withSettings().stubOnly());
+        McpSchema.Implementation implementation = new McpSchema.Implementation(name, "1.0.0");
+        when(client.getServerInfo()).thenReturn(implementation);
+        when(client.getClientInfo()).thenReturn(implementation);
+        List<McpSchema.Tool> tools = toolNames.stream()
+                .map(tool -> new McpSchema.Tool(tool, "Stub of " + tool, "{\"type\": \"object\"}"))
+                .toList();
+        when(client.listTools()).thenReturn(new McpSchema.ListToolsResult(tools, null));
+        when(client.callTool(any())).thenAnswer(invocation -> {
+            McpSchema.CallToolRequest request = invocation.getArgument(0);
+            sleep(latency);
+            return new McpSchema.CallToolResult(List.of(new McpSchema.TextContent(answer.apply(request))), false);
+        });
+        return client;
+    }
+
+    private static String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    static void sleep(Duration latency) {
+        if (latency.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+}
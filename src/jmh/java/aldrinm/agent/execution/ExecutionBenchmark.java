@@ -0,0 +1,53 @@
+package aldrinm.agent.execution;
+
+import aldrinm.agent.CypherExecutionResult;
+import aldrinm.agent.benchmark.AgentFixture;
+import aldrinm.agent.benchmark.BenchmarkGraph;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executing cypher against an embedded Neo4j and converting the records, for results of different shapes and sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionBenchmark {
+
+    private final static Map<String, String> QUERIES = Map.of(
+            "scalar", "MATCH (n:Minifig) RETURN count(n) AS numMinifigs",
+            "rows", "MATCH (m:Minifig)-[r:IN_SET]->(s:Set) RETURN m.name, r.quantity, s.name LIMIT 20",
+            "nodes", "MATCH (m:Minifig) RETURN m LIMIT 20",
+            "paths", "MATCH p = (:Minifig)-[:IN_SET]->(:Set)-[:HAS_THEME]->(:Theme) RETURN p LIMIT 20",
+            "truncated", "MATCH (m:Minifig) RETURN m");
+
+    @Param({"scalar", "rows", "nodes", "paths", "truncated"})
+    public String query;
+
+    private BenchmarkGraph graph;
+    private CypherExecutor cypherExecutor;
+    private String cypher;
+
+    @Setup
+    public void setUp() {
+        graph = new BenchmarkGraph();
+        cypherExecutor = new AgentFixture(BenchmarkGraph.schema(0), Duration.ZERO, graph.driver(), false, false).cypherExecutor();
+        cypher = QUERIES.get(query);
+    }
+
+    @TearDown
+    public void tearDown() {
+        graph.close();
+    }
+
+    @Benchmark
+    public CypherExecutionResult execute() {
+        return cypherExecutor.execute(cypher);
+    }
+}
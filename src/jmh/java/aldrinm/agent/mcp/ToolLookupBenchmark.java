@@ -0,0 +1,49 @@
+package aldrinm.agent.mcp;
+
+import aldrinm.agent.benchmark.AgentFixture;
+import aldrinm.agent.benchmark.BenchmarkGraph;
+import aldrinm.agent.validation.CypherValidationPipeline;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up a tool callback, from the cache and by listing the tools of the client as every call used to
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ToolLookupBenchmark {
+
+    private final static McpToolsChangedEvent TOOLS_CHANGED = new McpToolsChangedEvent("benchmark");
+
+    private BenchmarkGraph graph;
+    private McpToolRegistry toolRegistry;
+
+    @Setup
+    public void setUp() {
+        graph = new BenchmarkGraph();
+        toolRegistry = new AgentFixture(BenchmarkGraph.schema(0), Duration.ZERO, graph.driver(), false, false).toolRegistry();
+    }
+
+    @TearDown
+    public void tearDown() {
+        graph.close();
+    }
+
+    @Benchmark
+    public ToolCallback cached() {
+        return toolRegistry.findTool("cyver", CypherValidationPipeline.SCHEMA_VALIDATOR);
+    }
+
+    @Benchmark
+    public ToolCallback uncached() {
+        toolRegistry.onToolsChanged(TOOLS_CHANGED);
+        return toolRegistry.findTool("cyver", CypherValidationPipeline.SCHEMA_VALIDATOR);
+    }
+}
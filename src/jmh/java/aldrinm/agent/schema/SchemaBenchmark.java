@@ -0,0 +1,78 @@
+package aldrinm.agent.schema;
+
+import aldrinm.agent.benchmark.AgentFixture;
+import aldrinm.agent.benchmark.BenchmarkGraph;
+import aldrinm.agent.benchmark.StubMcpClients;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetching, parsing and pruning the schema, for schemas of increasing size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchemaBenchmark {
+
+    private final static String QUESTION = "Which minifigs have the most parts ?";
+
+    @Param({"0", "100", "1000"})
+    public int extraLabels;
+
+    private BenchmarkGraph graph;
+    private AgentFixture fixture;
+    private String schema;
+    private SchemaIndex index;
+
+    @Setup
+    public void setUp() {
+        graph = new BenchmarkGraph();
+        schema = BenchmarkGraph.schema(extraLabels);
+        fixture = new AgentFixture(schema, Duration.ZERO, graph.driver(), false, false);
+        index = SchemaIndex.parse(schema, fixture.toolRegistry().objectMapper());
+        fixture.schemaCache().get();
+    }
+
+    @TearDown
+    public void tearDown() {
+        graph.close();
+    }
+
+    /**
+     * What every question paid before the schema was cached
+     */
+    @Benchmark
+    public SchemaIndex fetchAndParse() {
+        String fetched = fixture.toolRegistry().callForText(StubMcpClients.NEO4J_SERVER, "get_neo4j_schema", Map.of());
+        return SchemaIndex.parse(fetched, fixture.toolRegistry().objectMapper());
+    }
+
+    @Benchmark
+    public SchemaIndex parse() {
+        return SchemaIndex.parse(schema, fixture.toolRegistry().objectMapper());
+    }
+
+    @Benchmark
+    public String render() {
+        return index.render(2000, QUESTION);
+    }
+
+    /**
+     * What every question pays now
+     */
+    @Benchmark
+    public String cachedSchemaFor() {
+        return fixture.schemaCache().schemaFor(QUESTION);
+    }
+
+    @Benchmark
+    public String fingerprint() {
+        return fixture.schemaCache().fingerprint();
+    }
+}
@@ -0,0 +1,68 @@
+package aldrinm.agent.validation;
+
+import aldrinm.agent.ValidationReport;
+import aldrinm.agent.benchmark.AgentFixture;
+import aldrinm.agent.benchmark.BenchmarkGraph;
+import aldrinm.agent.cyver.CyverSyntaxValidatonResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calling a CyVer validator and decoding its result, and the whole validation pipeline. With a tool latency the
+ * pipeline shows what running the schema and properties validators concurrently saves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+
+    private final static String VALID_CYPHER = "MATCH (m:Minifig)-[:IN_SET]->(s:Set) WHERE s.year > 2000 RETURN m.name, s.name LIMIT 20";
+    private final static String INVALID_CYPHER = "MATCH (m:Minifigs)-[:IN_SET]->(s:Set) WHERE s.year > 2000 RETURN m.name, s.name LIMIT 20";
+    private final static String BROKEN_CYPHER = "MATCH (m:Minifig {name: 'Minifig 1' RETURN m";
+
+    @Param({"0", "20"})
+    public int toolLatencyMs;
+
+    private BenchmarkGraph graph;
+    private CypherValidationPipeline validationPipeline;
+
+    @Setup
+    public void setUp() {
+        graph = new BenchmarkGraph();
+        validationPipeline = new AgentFixture(BenchmarkGraph.schema(0), Duration.ofMillis(toolLatencyMs), graph.driver(), false, false)
+                .validationPipeline();
+    }
+
+    @TearDown
+    public void tearDown() {
+        graph.close();
+    }
+
+    @Benchmark
+    public CyverSyntaxValidatonResult validateCypherWithTool() {
+        return validationPipeline.validateCypherWithTool(VALID_CYPHER, CypherValidationPipeline.SCHEMA_VALIDATOR);
+    }
+
+    @Benchmark
+    public ValidationReport validateValid() {
+        return validationPipeline.validate(VALID_CYPHER);
+    }
+
+    @Benchmark
+    public ValidationReport validateInvalid() {
+        return validationPipeline.validate(INVALID_CYPHER);
+    }
+
+    /**
+     * Caught by the pre-validation without calling CyVer
+     */
+    @Benchmark
+    public ValidationReport validateBroken() {
+        return validationPipeline.validate(BROKEN_CYPHER);
+    }
+}
@@ -0,0 +1,9 @@
+package aldrinm.agent;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A cypher tried while answering a question, and its validation report if it was validated
+ */
+public record CypherAttempt(String cypher, @Nullable ValidationReport validationReport) {
+}
@@ -1,4 +1,7 @@
 package aldrinm.agent;
 
-public record CypherExecutionResult(String cypher, java.util.Collection<java.util.Map<String, Object>> result) {
+/**
+ * @param truncated true when the rows were cut short by the row or size limit
+ */
+public record CypherExecutionResult(String cypher, java.util.Collection<java.util.Map<String, Object>> result, boolean truncated) {
 }
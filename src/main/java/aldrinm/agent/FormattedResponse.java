@@ -1,4 +1,6 @@
 package aldrinm.agent;
 
-public record FormattedResponse (String response) {
+import java.util.List;
+
+public record FormattedResponse (String response, String cypher, List<CypherAttempt> attempts, double cost) {
 }
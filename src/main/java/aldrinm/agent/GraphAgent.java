@@ -1,6 +1,18 @@
 package aldrinm.agent;
 
-import aldrinm.agent.cyver.CyverSyntaxValidatonResult;
+import aldrinm.agent.concurrency.ConcurrencyLimits;
+import aldrinm.agent.database.DatabaseResources;
+import aldrinm.agent.database.DatabaseRouter;
+import aldrinm.agent.format.AnswerStreamer;
+import aldrinm.agent.format.ResultFormatter;
+import aldrinm.agent.memory.Correction;
+import aldrinm.agent.memory.CorrectionStore;
+import aldrinm.agent.metrics.AgentMetrics;
+import aldrinm.agent.progress.AgentProgress;
+import aldrinm.agent.recording.CallRecorder;
+import aldrinm.agent.repair.CypherRepairer;
+import aldrinm.agent.validation.CypherNormalizer;
+import aldrinm.agent.validation.CypherValidationPipeline;
 import com.embabel.agent.api.annotation.AchievesGoal;
 import com.embabel.agent.api.annotation.Action;
 import com.embabel.agent.api.annotation.Agent;
@@ -8,39 +20,59 @@ import com.embabel.agent.api.annotation.Condition;
 import com.embabel.agent.api.common.OperationContext;
 import com.embabel.agent.api.common.PromptRunner;
 import com.embabel.agent.domain.io.UserInput;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.modelcontextprotocol.client.McpSyncClient;
-import io.modelcontextprotocol.spec.McpSchema;
+import com.embabel.common.ai.model.LlmOptions;
 import org.jetbrains.annotations.Nullable;
-import org.neo4j.driver.types.Node;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.ai.mcp.SyncMcpToolCallback;
-import org.springframework.ai.tool.ToolCallback;
-import org.springframework.data.neo4j.core.Neo4jClient;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.stream.Collectors;
+
+import static aldrinm.agent.progress.AgentProgressEvent.Stage.*;
 
 @Agent(description = "Answers any questions the user may have")
 public class GraphAgent {
 
     private final static Logger logger = LoggerFactory.getLogger(GraphAgent.class);
     public final static String CYPHER_HISTORY = "cypherHistory";
+    public final static String VALIDATION_REPORTS = "validationReports";
+    public final static String STARTED_AT = "startedAt";
+    public final static String ESCALATED_AT = "escalatedAt";
 
     private final static String CYPHER_VALID = "CYPHER_VALID";
     private final static String CYPHER_NOT_VALID = "CYPHER_NOT_VALID";
     private final static String VALIDATE_CYPHER_NEEDED = "VALIDATE_CYPHER_NEEDED";
 
-    private final List<McpSyncClient> mcpSyncClients;
-    private final Neo4jClient neo4jClient;
-
-    public GraphAgent(List<McpSyncClient> mcpSyncClients, Neo4jClient neo4jClient) {
-        this.mcpSyncClients = mcpSyncClients;
-        this.neo4jClient = neo4jClient;
+    private final DatabaseRouter databases;
+    private final SpeculativeCypherGenerator speculativeGenerator;
+    private final ResultFormatter resultFormatter;
+    private final AnswerStreamer answerStreamer;
+    private final AgentProgress progress;
+    private final CorrectionStore correctionStore;
+    private final CallRecorder callRecorder;
+    private final RectifyLoopControl loopControl;
+    private final ConcurrencyLimits limits;
+    private final AgentMetrics metrics;
+    private final RunTracker runTracker;
+
+    public GraphAgent(DatabaseRouter databases, SpeculativeCypherGenerator speculativeGenerator,
+                      ResultFormatter resultFormatter, AnswerStreamer answerStreamer,
+                      AgentProgress progress, CorrectionStore correctionStore, CallRecorder callRecorder,
+                      RectifyLoopControl loopControl, ConcurrencyLimits limits, AgentMetrics metrics,
+                      RunTracker runTracker) {
+        this.databases = databases;
+        this.speculativeGenerator = speculativeGenerator;
+        this.resultFormatter = resultFormatter;
+        this.answerStreamer = answerStreamer;
+        this.progress = progress;
+        this.correctionStore = correctionStore;
+        this.callRecorder = callRecorder;
+        this.loopControl = loopControl;
+        this.limits = limits;
+        this.metrics = metrics;
+        this.runTracker = runTracker;
     }
 
     @Action(
@@ -48,28 +80,59 @@ public class GraphAgent {
             post = VALIDATE_CYPHER_NEEDED
     )
     CypherStatementRequest generateCypher(UserInput userInput, OperationContext context) {
-        context.set(CYPHER_HISTORY, new ConcurrentLinkedQueue<String>()); //updated in the validateCypher method
-
-        String schema = getSchema();
-        CypherStatementRequest cypherStatementRequest = context
-                .ai()
-                .withAutoLlm()
-                .createObject(String.format("""
-                                Build a cypher query to answer the user's query. Use a case-insensitive contains for
-                                string comparisons wherever appropriate. Always limit results to 20 rows
-                                # User query
-                                %s
+        try (var timing = timeAction("generate", userInput, context)) {
+            context.set(CYPHER_HISTORY, new ConcurrentLinkedQueue<String>()); //updated in the validateCypher method
+            context.set(VALIDATION_REPORTS, new ConcurrentHashMap<String, ValidationReport>());
+            context.set(STARTED_AT, System.nanoTime());
+            DatabaseRouter.Route route = databases.route(userInput);
+            DatabaseResources database = route.database();
+
+            Optional<CypherStatementRequest> cached = database.resultCache().get(route.question());
+            if (cached.isPresent()) {
+                //this cypher already passed validation against the current schema, so there is no need to validate it again
+                logger.info("Using cached cypher: {} ", cached.get());
+                validationReports(context).put(CypherNormalizer.key(cached.get().cypher()), new ValidationReport(null, null, null));
+                progress.publish(context, userInput, GENERATED, cached.get().cypher());
+                return cached.get();
+            }
 
-                                Use this database schema:
-                                # Schema
-                                %s
+            String schema = getSchema(database, route.question());
+            String prompt = String.format("""
+                            Build a cypher query to answer the user's query. Use a case-insensitive contains for
+                            string comparisons wherever appropriate. Always limit results to 20 rows
+                            # User query
+                            %s
+
+                            Use this database schema:
+                            # Schema
+                            %s
+                            %s
+                            Return the cypher as a plain string with no markdown or triple quotes
+                            """,
+                            route.question(), schema, pastCorrections(route, null)).trim();
+
+            if (speculativeGenerator.isEnabled()) {
+                //the candidate has been validated already, validateCypher picks up its report
+                SpeculativeCypherGenerator.Candidate candidate = speculativeGenerator.generate(prompt,
+                        database.validationPipeline(), context);
+                validationReports(context).put(CypherNormalizer.key(candidate.cypherStatementRequest().cypher()),
+                        candidate.validationReport());
+                if (validationReportPasses(candidate.validationReport())) {
+                    database.resultCache().put(route.question(), candidate.cypherStatementRequest());
+                }
+                progress.publish(context, userInput, GENERATED, candidate.cypherStatementRequest().cypher());
+                return candidate.cypherStatementRequest();
+            }
 
-                                Return the cypher as a plain string with no markdown or triple quotes
-                                """,
-                                userInput.getContent(), schema).trim(),
-                        CypherStatementRequest.class);
-        logger.info("First attempt at cypher generation: {} ", cypherStatementRequest);
-        return cypherStatementRequest;
+            CypherStatementRequest cypherStatementRequest = limits.llm(() -> callRecorder.llm("createObject", prompt,
+                    CypherStatementRequest.class, () -> context
+                            .ai()
+                            .withAutoLlm()
+                            .createObject(prompt, CypherStatementRequest.class)));
+            logger.info("First attempt at cypher generation: {} ", cypherStatementRequest);
+            progress.publish(context, userInput, GENERATED, cypherStatementRequest.cypher());
+            return cypherStatementRequest;
+        }
     }
 
     @Action(
@@ -78,19 +141,29 @@ public class GraphAgent {
             canRerun = true,
             pre = VALIDATE_CYPHER_NEEDED
     )
-    public ValidationReport validateCypher(CypherStatementRequest cypherStatementRequest, OperationContext context) {
-        updateCypherHistory(cypherStatementRequest, context);
-
-        CyverSyntaxValidatonResult syntaxValidationResult = validateSyntax(cypherStatementRequest.cypher());
-        CyverSyntaxValidatonResult schemaValidationResult = null;
-        CyverSyntaxValidatonResult propertiesValidationResult = null;
-
-        if (syntaxValidationResult.isValid()) {
-            //only bother with these next validations if the syntax is correct
-            schemaValidationResult = validateCypherSchema(cypherStatementRequest.cypher());
-            propertiesValidationResult = validateCypherProperties(cypherStatementRequest.cypher());
+    public ValidationReport validateCypher(CypherStatementRequest cypherStatementRequest, UserInput userInput, OperationContext context) {
+        try (var timing = timeAction("validate", userInput, context)) {
+            String key = CypherNormalizer.key(cypherStatementRequest.cypher());
+            if (cypherHistory(context).stream().anyMatch(cypher -> CypherNormalizer.key(cypher).equals(key))) {
+                //the LLM went back to a cypher it was already told is wrong, its report is reused as is
+                logger.info("The cypher was already tried: {}", cypherStatementRequest);
+                metrics.recordRectifyLoop("repeat");
+            }
+            updateCypherHistory(cypherStatementRequest, context);
+            progress.publish(context, userInput, VALIDATING, cypherStatementRequest.cypher());
+
+            ValidationReport validationReport = validationReports(context).get(key);
+            if (validationReport == null) {
+                DatabaseRouter.Route route = databases.route(userInput);
+                validationReport = route.database().validationPipeline().validate(cypherStatementRequest.cypher());
+                validationReports(context).put(key, validationReport);
+                if (validationReportPasses(validationReport)) {
+                    route.database().resultCache().put(route.question(), cypherStatementRequest);
+                }
+            }
+            progress.publish(context, userInput, VALIDATED, validationReportPasses(validationReport) ? "valid" : "not valid");
+            return validationReport;
         }
-        return new ValidationReport(syntaxValidationResult, schemaValidationResult, propertiesValidationResult);
     }
 
     @Action(
@@ -99,35 +172,63 @@ public class GraphAgent {
             post = { VALIDATE_CYPHER_NEEDED },
             canRerun = true
     )
-    public CypherStatementRequest rectifyCypher(CypherStatementRequest cypherStatementRequest, ValidationReport validationReport, OperationContext context) {
-        logger.info("Attempting to fix the cypher {}", cypherStatementRequest);
-        String feedback = formatFeedbackIfAny(validationReport);
-
-        String schema = getSchema();
-        CypherStatementRequest updatedCypher = context
-                .ai()
-                .withAutoLlm()
-                .createObject(String.format("""
-                                        Review and correct the cypher query.  
-                                        # Cypher query
-                                        %s
-                                        
-                                        Feedback about this cypher is:
-                                        # Feedback
-                                        %s
-                                        
-                                        Use this database schema:
-                                        # Schema
-                                        %s
-                                        
-                                        Return the correct cypher as a plain string with no markdown or triple-quotes
-                                        """,
-                                cypherStatementRequest.cypher(), feedback, schema).trim(),
-                        CypherStatementRequest.class);
+    public CypherStatementRequest rectifyCypher(CypherStatementRequest cypherStatementRequest, ValidationReport validationReport,
+                                                UserInput userInput, OperationContext context) {
+        try (var timing = timeAction("rectify", userInput, context)) {
+            logger.info("Attempting to fix the cypher {}", cypherStatementRequest);
+            String model = controlLoop(context);
+            progress.publish(context, userInput, RECTIFYING, "#" + cypherHistory(context).size()
+                    + (model != null ? " with " + model : ""));
+            DatabaseRouter.Route route = databases.route(userInput);
+            DatabaseResources database = route.database();
+
+            //trivial mistakes such as a misspelled label are repaired without the LLM
+            Optional<CypherRepairer.Repair> repair = database.cypherRepairer().repair(cypherStatementRequest.cypher(), validationReport);
+            if (repair.isPresent()) {
+                CypherStatementRequest repairedCypher = new CypherStatementRequest(repair.get().cypher());
+                ValidationReport repairedReport = database.validationPipeline().validate(repairedCypher.cypher());
+                validationReports(context).put(CypherNormalizer.key(repairedCypher.cypher()), repairedReport);
+                boolean passes = validationReportPasses(repairedReport);
+                metrics.recordRepair(passes);
+                if (passes) {
+                    logger.info("Repaired the cypher without the LLM ({}): {}", String.join(", ", repair.get().changes()), repairedCypher);
+                    database.resultCache().put(route.question(), repairedCypher);
+                    return repairedCypher;
+                }
+                logger.info("The repaired cypher still fails validation, asking the LLM");
+            }
 
+            String feedback = formatFeedbackIfAny(validationReport);
 
-        logger.info("Updated cypher = {}", updatedCypher);
-        return updatedCypher;
+            String schema = getSchema(database, route.question(), cypherStatementRequest.cypher(), feedback);
+            String prompt = String.format("""
+                                            Review and correct the cypher query.  
+                                            # Cypher query
+                                            %s
+                                        
+                                            Feedback about this cypher is:
+                                            # Feedback
+                                            %s
+                                        
+                                            Use this database schema:
+                                            # Schema
+                                            %s
+                                            %s%s
+                                            Return the correct cypher as a plain string with no markdown or triple-quotes
+                                            """,
+                                    cypherStatementRequest.cypher(), feedback, schema,
+                                    pastCorrections(route, feedback), failedAttempts(context)).trim();
+            PromptRunner promptRunner = model != null
+                    ? context.ai().withLlm(LlmOptions.withModel(model))
+                    : context.ai().withAutoLlm();
+            CypherStatementRequest updatedCypher = limits.llm(() -> callRecorder.llm(
+                    model != null ? "createObject " + model : "createObject", prompt, CypherStatementRequest.class,
+                    () -> promptRunner.createObject(prompt, CypherStatementRequest.class)));
+
+
+            logger.info("Updated cypher = {}", updatedCypher);
+            return updatedCypher;
+        }
     }
 
     @Condition(name = VALIDATE_CYPHER_NEEDED)
@@ -150,69 +251,80 @@ public class GraphAgent {
             description = "Executes a cypher statement ",
             pre = CYPHER_VALID
     )
-    CypherExecutionResult executeCypher(CypherStatementRequest cypherStatementRequest) {
-        Collection<Map<String, Object>> results = neo4jClient
-                .query(cypherStatementRequest.cypher())
-                .fetch()
-                .all();
-
-        List<Map<String, Object>> processedResults = results.stream()
-                .map(row -> row.entrySet().stream()
-                        .collect(Collectors.toMap(
-                                Map.Entry::getKey,
-                                entry -> {
-                                    Object value = entry.getValue();
-                                    if (value instanceof Node) {
-                                        return ((Node) value).asMap();
-                                    }
-                                    return value;
-                                }
-                        )))
-                .collect(Collectors.toList());
-
-        return new CypherExecutionResult(cypherStatementRequest.cypher(), processedResults);
+    CypherExecutionResult executeCypher(CypherStatementRequest cypherStatementRequest, UserInput userInput, OperationContext context) {
+        try (var timing = timeAction("execute", userInput, context)) {
+            progress.publish(context, userInput, EXECUTING, cypherStatementRequest.cypher());
+            CypherExecutionResult executionResult = databases.route(userInput).database().cypherExecutor()
+                    .execute(cypherStatementRequest.cypher());
+            progress.publish(context, userInput, EXECUTED, executionResult.result().size() + " rows");
+            return executionResult;
+        }
     }
 
     @AchievesGoal(description = "This is the way")
     @Action(description = "Formats the response neatly for presentation to the user")
-    FormattedResponse formatResponse(CypherExecutionResult response, OperationContext context) {
-        printDebugCypher(context);
-        String formattedResponse = context.ai()
-                .withAutoLlm()
-                .generateText(String.format("""
-                                        Format this response for text presentation in plain conversational text.
-                                        Only respond with the text response and nothing else. No markdown or triple single quotes.
-                                        # Response
-                                        %s
-                                        """,
-                                response.result()).trim());
-        return new FormattedResponse(formattedResponse);
+    FormattedResponse formatResponse(CypherExecutionResult response, UserInput userInput, OperationContext context) {
+        try (var timing = timeAction("format", userInput, context)) {
+            printDebugCypher(context);
+            progress.publish(context, userInput, FORMATTING, null);
+            DatabaseRouter.Route route = databases.route(userInput);
+            String question = route.question();
+            double streamedCost = 0;
+            //small results read fine from a template, only the rest is worth an LLM call
+            String formattedResponse = resultFormatter.format(question, response).orElse(null);
+            if (formattedResponse == null) {
+                String prompt = String.format("""
+                                Format this response for text presentation in plain conversational text.
+                                Only respond with the text response and nothing else. No markdown or triple single quotes.
+                                %s
+                                # User query
+                                %s
+                                # Response
+                                %s
+                                """,
+                        response.truncated() ? "The response was cut short, mention that there may be more results." : "",
+                        question, resultFormatter.encode(response)).trim();
+                if (answerStreamer.isEnabled()) {
+                    //a replayed answer arrives in one piece, without chunks
+                    AnswerStreamer.StreamedAnswer answer = limits.llm(() -> callRecorder.llm("streamText", prompt,
+                            AnswerStreamer.StreamedAnswer.class, () -> answerStreamer.stream(prompt,
+                                    chunk -> progress.publish(context, userInput, ANSWER_CHUNK, chunk))));
+                    formattedResponse = answer.text();
+                    streamedCost = answer.cost();
+                } else {
+                    formattedResponse = limits.llm(() -> callRecorder.llm("generateText", prompt, String.class,
+                            () -> context.ai()
+                                    .withAutoLlm()
+                                    .generateText(prompt)));
+                }
+            }
+            rememberCorrections(route, response.cypher(), context);
+            progress.publish(context, userInput, ANSWERED, formattedResponse);
+            double cost = recordRunMetrics(context) + streamedCost;
+            return new FormattedResponse(formattedResponse, response.cypher(), attempts(context), cost);
+        }
     }
 
-    private static boolean validationReportPasses(ValidationReport validationReport) {
-        //if there is a syntax validation, report it immediately
-        if (validationReport.syntaxResult() != null && validationReport.syntaxResult().isValid() != null && !validationReport.syntaxResult().isValid()) {
+    static boolean validationReportPasses(ValidationReport validationReport) {
+        //if there is a syntax validation, report it immediately; a syntax that wasn't found valid means the other
+        //validators never ran
+        if (validationReport.syntaxResult() != null && !Boolean.TRUE.equals(validationReport.syntaxResult().isValid())) {
             return false;
         }
 
         // Check schema validation result
-        if (validationReport.schemaResult() != null) {
-            if (validationReport.schemaResult().score() != null && validationReport.schemaResult().score() < 1.0f) {
-                return false;
-            }
-            if (validationReport.schemaResult().metadata() != null && !validationReport.schemaResult().metadata().isEmpty()) {
-                return false;
-            }
+        if (validationReport.schemaResult() != null && !CypherValidationPipeline.passes(validationReport.schemaResult())) {
+            return false;
         }
 
         // Check properties validation result
-        if (validationReport.propertiesResult() != null) {
-            if (validationReport.propertiesResult().score() != null && validationReport.propertiesResult().score() < 1.0f) {
-                return false;
-            }
-            if (validationReport.propertiesResult().metadata() != null && !validationReport.propertiesResult().metadata().isEmpty()) {
-                return false;
-            }
+        if (validationReport.propertiesResult() != null && !CypherValidationPipeline.passes(validationReport.propertiesResult())) {
+            return false;
+        }
+
+        // Check the query plan result
+        if (validationReport.planResult() != null && !CypherValidationPipeline.passes(validationReport.planResult())) {
+            return false;
         }
 
         //everything looks good!
@@ -229,17 +341,34 @@ public class GraphAgent {
         }
     }
 
+    private static Collection<String> cypherHistory(OperationContext context) {
+        @SuppressWarnings("unchecked")
+        ConcurrentLinkedQueue<String> cypherHistory = (ConcurrentLinkedQueue<String>) context.get(CYPHER_HISTORY);
+        return Objects.requireNonNull(cypherHistory);
+    }
+
+    /**
+     * Reports of the cypher already validated during this run, keyed by the cypher
+     */
+    private static Map<String, ValidationReport> validationReports(OperationContext context) {
+        @SuppressWarnings("unchecked")
+        Map<String, ValidationReport> validationReports = (Map<String, ValidationReport>) context.get(VALIDATION_REPORTS);
+        return Objects.requireNonNull(validationReports);
+    }
+
     @Nullable
-    private static String formatFeedbackIfAny(ValidationReport validationReport) {
+    static String formatFeedbackIfAny(ValidationReport validationReport) {
         StringBuilder metadataBuilder = new StringBuilder();
-        if (validationReport.syntaxResult() != null && validationReport.syntaxResult().isValid() != null) {
-            if (!validationReport.syntaxResult().isValid()) {
-                metadataBuilder.append("Syntax Validation Result: ");
+        if (validationReport.syntaxResult() != null && !Boolean.TRUE.equals(validationReport.syntaxResult().isValid())) {
+            metadataBuilder.append("Syntax Validation Result: ");
+            if (validationReport.syntaxResult().metadata() == null || validationReport.syntaxResult().metadata().isEmpty()) {
+                metadataBuilder.append("the syntax could not be confirmed as valid; ");
+            } else {
                 for (Map<String, Object> meta : validationReport.syntaxResult().metadata()) {
                     metadataBuilder.append(meta.toString()).append("; ");
                 }
-                metadataBuilder.append("\n");
             }
+            metadataBuilder.append("\n");
         }
 
         if (validationReport.schemaResult() != null) {
@@ -262,6 +391,16 @@ public class GraphAgent {
             }
         }
 
+        if (validationReport.planResult() != null) {
+            if (validationReport.planResult().metadata() != null && !validationReport.planResult().metadata().isEmpty()) {
+                metadataBuilder.append("Query Plan Result: ");
+                for (Map<String, Object> meta : validationReport.planResult().metadata()) {
+                    metadataBuilder.append(meta.toString()).append("; ");
+                }
+                metadataBuilder.append("\n");
+            }
+        }
+
         // Save metadata to string if we have any
         if (!metadataBuilder.isEmpty()) {
             return metadataBuilder.toString();
@@ -270,92 +409,158 @@ public class GraphAgent {
         }
     }
 
-    private static void printDebugCypher(OperationContext context) {
-        @SuppressWarnings("unchecked")
-        ConcurrentLinkedQueue<String> cypherHistory = (ConcurrentLinkedQueue<String>) context.get(CYPHER_HISTORY);
-        logger.info("Cypher History:\n {}", String.join("\n", Objects.requireNonNull(cypherHistory)));
+    /**
+     * Gives up on the question once it has run out of budget or stopped improving, escalating it to the stronger
+     * model first if there is one
+     * @return the model to rectify with once escalated, or null for the usual one
+     */
+    @Nullable
+    private String controlLoop(OperationContext context) {
+        List<CypherAttempt> attempts = attempts(context);
+        Integer escalatedAt = (Integer) context.get(ESCALATED_AT);
+        Long startedAt = (Long) context.get(STARTED_AT);
+        Duration elapsed = startedAt != null ? Duration.ofNanos(System.nanoTime() - startedAt) : Duration.ZERO;
+        RectifyLoopControl.Decision decision = loopControl.decide(attempts, elapsed, runCost(context),
+                escalatedAt != null ? escalatedAt : -1);
+        switch (decision.outcome()) {
+            case ABORT -> {
+                logger.info("Giving up on the cypher, {}", decision.reason());
+                metrics.recordRectifyLoop("abort");
+                recordRunMetrics(context);
+                throw new RectifyAbortedException(decision.reason(), attempts);
+            }
+            case ESCALATE -> {
+                logger.info("Escalating to {}, {}", loopControl.escalationModel(), decision.reason());
+                metrics.recordRectifyLoop("escalate");
+                context.set(ESCALATED_AT, attempts.size());
+                return loopControl.escalationModel();
+            }
+            default -> {
+                return escalatedAt != null ? loopControl.escalationModel() : null;
+            }
+        }
     }
 
-    private String getSchema() {
-        ToolCallback callback = findTool("mcp-neo4j-cypher", "get_neo4j_schema");
-        String result = callback.call("{}");
-
-        //parse the result string which is in json
-        final ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        try {
-            List<Map<String, Object>> listResult = objectMapper.readValue(result, new com.fasterxml.jackson.core.type.TypeReference<List<Map<String, Object>>>() {});
-            // Assuming the first element of the list contains the actual data
-            if (!listResult.isEmpty()) {
-                Map<String, Object> dataMap = listResult.get(0);
-                String textValue = (String) dataMap.get("text");
-                //let's not bother parsing this. LLMs are supposed to work better with JSON isn't it ? ;)
-                return textValue;
+    /**
+     * Times an action in the metrics and, when the question is being tracked, in its run along with the cost so far,
+     * which is recorded even when the action fails
+     */
+    private AgentMetrics.Timing timeAction(String action, UserInput userInput, OperationContext context) {
+        AgentMetrics.Timing timing = metrics.timeAction(action);
+        long start = System.nanoTime();
+        return () -> {
+            timing.close();
+            RunTracker.Run run = runTracker.run(userInput);
+            if (run != null) {
+                run.record(action, Duration.ofNanos(System.nanoTime() - start), runCost(context));
             }
-        } catch (JsonProcessingException ex) {
-            throw new RuntimeException("Failed to parse result", ex);
+        };
+    }
+
+    /**
+     * @return the cost of the LLM calls of the run so far
+     */
+    private static double runCost(OperationContext context) {
+        double cost = 0;
+        for (var invocation : context.getProcessContext().getAgentProcess().getLlmInvocations()) {
+            cost += invocation.cost();
         }
+        return cost;
+    }
 
-        throw new RuntimeException("Could not get the schema. No MCP tools available!");
+    /**
+     * @return the cypher already tried, once the LLM has gone back to one of them, or nothing
+     */
+    private static String failedAttempts(OperationContext context) {
+        Map<String, String> tried = new LinkedHashMap<>();
+        cypherHistory(context).forEach(cypher -> tried.putIfAbsent(CypherNormalizer.key(cypher), cypher));
+        if (tried.size() == cypherHistory(context).size()) {
+            return "";
+        }
+        StringBuilder failed = new StringBuilder("\nThese queries were already tried and failed, return a different one:\n# Failed queries\n");
+        tried.values().forEach(cypher -> failed.append(cypher).append('\n'));
+        return failed.toString();
     }
 
-    private CyverSyntaxValidatonResult validateSyntax(String cypherStatement) {
-        return validateCypherWithTool(cypherStatement, "validate_cypher_syntax");
+    /**
+     * Records how many rectify rounds the question took, and the LLM usage of the whole run
+     * @return the cost of the LLM calls of the run
+     */
+    private double recordRunMetrics(OperationContext context) {
+        @SuppressWarnings("unchecked")
+        ConcurrentLinkedQueue<String> cypherHistory = (ConcurrentLinkedQueue<String>) context.get(CYPHER_HISTORY);
+        if (cypherHistory != null) {
+            metrics.recordRectifyIterations(Math.max(0, cypherHistory.size() - 1));
+        }
+        double cost = 0;
+        for (var invocation : context.getProcessContext().getAgentProcess().getLlmInvocations()) {
+            var usage = invocation.getUsage();
+            metrics.recordLlmUsage(invocation.getLlm().getName(),
+                    Objects.requireNonNullElse(usage.getPromptTokens(), 0),
+                    Objects.requireNonNullElse(usage.getCompletionTokens(), 0),
+                    invocation.cost());
+            cost += invocation.cost();
+        }
+        return cost;
     }
 
-    private CyverSyntaxValidatonResult validateCypherSchema(String cypherStatement) {
-        return validateCypherWithTool(cypherStatement, "schema_validator");
+    /**
+     * @return every cypher validated during this run, in order, with its report
+     */
+    private static List<CypherAttempt> attempts(OperationContext context) {
+        @SuppressWarnings("unchecked")
+        ConcurrentLinkedQueue<String> cypherHistory = (ConcurrentLinkedQueue<String>) context.get(CYPHER_HISTORY);
+        Map<String, ValidationReport> validationReports = validationReports(context);
+        return Objects.requireNonNull(cypherHistory).stream()
+                .map(cypher -> new CypherAttempt(cypher, validationReports.get(CypherNormalizer.key(cypher))))
+                .toList();
     }
 
-    private CyverSyntaxValidatonResult validateCypherProperties(String cypherStatement) {
-        return validateCypherWithTool(cypherStatement, "validate_cypher_properties");
+    private static void printDebugCypher(OperationContext context) {
+        @SuppressWarnings("unchecked")
+        ConcurrentLinkedQueue<String> cypherHistory = (ConcurrentLinkedQueue<String>) context.get(CYPHER_HISTORY);
+        logger.info("Cypher History:\n {}", String.join("\n", Objects.requireNonNull(cypherHistory)));
     }
 
-    private CyverSyntaxValidatonResult validateCypherWithTool(String cypherStatement, String toolName) {
-        ToolCallback callback = findTool("cyver", toolName);
-        String result = callback.call("{\"query\": \"" + cypherStatement + "\"}");
-
-        //parse the result string which is in json
-        final ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        try {
-            List<Map<String, Object>> listResult = objectMapper.readValue(result, new com.fasterxml.jackson.core.type.TypeReference<List<Map<String, Object>>>() {});
-            // Assuming the first element of the list contains the actual data
-            if (!listResult.isEmpty()) {
-                Map<String, Object> dataMap = listResult.get(0);
-                String textValue = (String) dataMap.get("text");
-                return objectMapper.readValue(textValue, CyverSyntaxValidatonResult.class);
+    /**
+     * Remembers how each cypher that failed validation during this run was corrected into the one that was executed
+     */
+    private void rememberCorrections(DatabaseRouter.Route route, String executedCypher, OperationContext context) {
+        for (CypherAttempt attempt : attempts(context)) {
+            if (attempt.validationReport() != null && !validationReportPasses(attempt.validationReport())
+                    && !attempt.cypher().equals(executedCypher)) {
+                correctionStore.record(new Correction(route.database().name(), route.question(), attempt.cypher(),
+                        formatFeedbackIfAny(attempt.validationReport()), executedCypher));
             }
-        } catch (JsonProcessingException ex) {
-            throw new RuntimeException("Failed to parse result", ex);
         }
-
-        throw new RuntimeException("Could not validate the cypher. No MCP tools available!");
     }
 
     /**
-     * Finds an MCP tool by client name and tool name
-     * @return ToolCallback for the found tool
+     * @return how similar questions were corrected before, as examples for the prompt, or nothing if there are none
      */
-    private ToolCallback findTool(String mcpClientName, String toolName) {
-        Optional<McpSyncClient> mcpClient = mcpSyncClients.stream()
-                .filter(c -> c.getServerInfo().name().equals(mcpClientName))
-                .findAny();
-
-        if (mcpClient.isEmpty()) {
-            throw new RuntimeException("Could not find the " + mcpClientName + " client");
+    private String pastCorrections(DatabaseRouter.Route route, @Nullable String feedback) {
+        List<Correction> corrections = correctionStore.similar(route.database().name(), route.question(), feedback);
+        if (corrections.isEmpty()) {
+            return "";
         }
-
-        var client = mcpClient.get();
-        Optional<McpSchema.Tool> tool = client.listTools().tools().stream()
-                .filter(t -> t.name().equals(toolName))
-                .findAny();
-
-        if (tool.isEmpty()) {
-            throw new RuntimeException("Could not find tool '" + toolName + "' in the " + mcpClientName + " client");
+        StringBuilder examples = new StringBuilder("\nThese corrections were needed for similar queries before:\n# Past corrections\n");
+        for (Correction correction : corrections) {
+            examples.append("Query: ").append(correction.question()).append('\n')
+                    .append("Wrong cypher: ").append(correction.failedCypher()).append('\n');
+            if (correction.feedback() != null) {
+                examples.append("Feedback: ").append(correction.feedback().trim()).append('\n');
+            }
+            examples.append("Correct cypher: ").append(correction.fixedCypher()).append("\n\n");
         }
+        return examples.toString();
+    }
 
-        return new SyncMcpToolCallback(client, tool.get());
+    /**
+     * @return the part of the schema of the database relevant to the question, and to the failing cypher and its
+     * feedback if any
+     */
+    private String getSchema(DatabaseResources database, String... relevantTexts) {
+        return database.schemaCache().schemaFor(relevantTexts);
     }
 
 }
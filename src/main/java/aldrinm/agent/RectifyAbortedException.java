@@ -0,0 +1,39 @@
+package aldrinm.agent;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Thrown when a question is given up on because its cypher could not be made to pass validation within the budgets
+ * of the {@link RectifyLoopControl}. It carries every cypher tried, and the one that came closest.
+ */
+public class RectifyAbortedException extends RuntimeException {
+
+    private final List<CypherAttempt> attempts;
+    @Nullable
+    private final CypherAttempt best;
+
+    public RectifyAbortedException(String reason, List<CypherAttempt> attempts) {
+        this(reason, attempts, RectifyLoopControl.best(attempts).orElse(null));
+    }
+
+    private RectifyAbortedException(String reason, List<CypherAttempt> attempts, @Nullable CypherAttempt best) {
+        super("Gave up on the cypher, " + reason
+                + (best != null ? String.format(". The closest attempt scored %.2f: %s", best.validationReport().score(), best.cypher()) : ""));
+        this.attempts = attempts;
+        this.best = best;
+    }
+
+    public List<CypherAttempt> attempts() {
+        return attempts;
+    }
+
+    /**
+     * @return the attempt with the best validation score, or null if none was validated
+     */
+    @Nullable
+    public CypherAttempt best() {
+        return best;
+    }
+}
@@ -0,0 +1,109 @@
+package aldrinm.agent;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Decides whether another rectify round is worth it, from the cypher tried so far for the question and their
+ * validation scores. A question is given up on once it has used its attempts, time or LLM cost. When the best score
+ * has not improved for a few attempts, the next rounds are handed to a stronger model, and if that doesn't help
+ * either the question is given up on.
+ */
+@Component
+public class RectifyLoopControl {
+
+    private final static Logger logger = LoggerFactory.getLogger(RectifyLoopControl.class);
+
+    public enum Outcome {
+        CONTINUE,
+        ESCALATE,
+        ABORT
+    }
+
+    public record Decision(Outcome outcome, @Nullable String reason) {
+    }
+
+    private final int maxAttempts;
+    private final Duration maxDuration;
+    private final double maxCost;
+    private final int stallAttempts;
+    @Nullable
+    private final String escalationModel;
+
+    public RectifyLoopControl(@Value("${cypher.loop.max-attempts:8}") int maxAttempts,
+                              @Value("${cypher.loop.max-duration:2m}") Duration maxDuration,
+                              @Value("${cypher.loop.max-cost:0}") double maxCost,
+                              @Value("${cypher.loop.stall-attempts:2}") int stallAttempts,
+                              @Value("${cypher.loop.escalation-model:${embabel.models.llms.best:}}") String escalationModel,
+                              @Value("${embabel.models.defaultLlm:}") String defaultModel) {
+        this.maxAttempts = maxAttempts;
+        this.maxDuration = maxDuration;
+        this.maxCost = maxCost;
+        this.stallAttempts = Math.max(1, stallAttempts);
+        if (escalationModel.isBlank() || escalationModel.equals(defaultModel)) {
+            //escalating to the model already in use would only spend more attempts
+            logger.info("No stronger model to escalate to, stalled questions are given up on");
+            this.escalationModel = null;
+        } else {
+            this.escalationModel = escalationModel;
+        }
+    }
+
+    /**
+     * @return the model the rectify rounds are handed to once escalated, or null if there is none
+     */
+    @Nullable
+    public String escalationModel() {
+        return escalationModel;
+    }
+
+    /**
+     * @param attempts    the cypher tried so far, in order, the last one having just failed validation
+     * @param elapsed     the time spent on the question so far
+     * @param cost        the cost of the LLM calls made for the question so far
+     * @param escalatedAt the number of attempts made before escalating, or -1 if not escalated
+     */
+    public Decision decide(List<CypherAttempt> attempts, Duration elapsed, double cost, int escalatedAt) {
+        if (maxAttempts > 0 && attempts.size() >= maxAttempts) {
+            return new Decision(Outcome.ABORT, "tried " + attempts.size() + " cypher statements");
+        }
+        if (!maxDuration.isZero() && !maxDuration.isNegative() && elapsed.compareTo(maxDuration) >= 0) {
+            return new Decision(Outcome.ABORT, "spent more than " + maxDuration);
+        }
+        if (maxCost > 0 && cost >= maxCost) {
+            return new Decision(Outcome.ABORT, String.format("spent $%.4f on the LLM", cost));
+        }
+        //attempts since the best score was first reached, or since escalating if later
+        int bestIndex = best(attempts).map(attempts::indexOf).orElse(-1);
+        int stalled = attempts.size() - 1 - Math.max(bestIndex, escalatedAt - 1);
+        if (stalled < stallAttempts) {
+            return new Decision(Outcome.CONTINUE, null);
+        }
+        String reason = "the validation score did not improve in " + stalled + " attempts";
+        if (escalatedAt < 0 && escalationModel != null) {
+            return new Decision(Outcome.ESCALATE, reason);
+        }
+        return new Decision(Outcome.ABORT, reason);
+    }
+
+    /**
+     * @return the first of the validated attempts with the best score
+     */
+    public static Optional<CypherAttempt> best(List<CypherAttempt> attempts) {
+        return attempts.stream()
+                .filter(attempt -> attempt.validationReport() != null)
+                .reduce((best, attempt) -> score(attempt) > score(best) ? attempt : best);
+    }
+
+    private static double score(CypherAttempt attempt) {
+        return Objects.requireNonNull(attempt.validationReport()).score();
+    }
+}
@@ -0,0 +1,78 @@
+package aldrinm.agent;
+
+import com.embabel.agent.domain.io.UserInput;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Follows questions by the {@link UserInput} they are asked with, which the agent process is handed as is. The agent
+ * records the time each of its actions took and the LLM cost so far in the run of the question, so the asker learns
+ * them even when the question fails, where the agent returns nothing. Each run has an id of its own, which its
+ * progress events carry so that the asker can pick them out.
+ */
+@Component
+public class RunTracker {
+
+    private final Map<UserInput, Run> runs = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * Starts following a question, until it is released
+     */
+    public Run track(UserInput userInput) {
+        Run run = new Run(UUID.randomUUID().toString());
+        runs.put(userInput, run);
+        return run;
+    }
+
+    public void release(UserInput userInput) {
+        runs.remove(userInput);
+    }
+
+    /**
+     * @return the run of the question, or null if it is not being followed
+     */
+    @Nullable
+    public Run run(UserInput userInput) {
+        return runs.get(userInput);
+    }
+
+    /**
+     * The time spent in each action of the agent, in the order they first ran, and the LLM cost of the run so far
+     */
+    public static final class Run {
+
+        private final String id;
+        private final Map<String, Long> actionNanos = new LinkedHashMap<>();
+        private double cost;
+
+        private Run(String id) {
+            this.id = id;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public synchronized void record(String action, Duration duration, double cost) {
+            actionNanos.merge(action, duration.toNanos(), Long::sum);
+            this.cost = cost;
+        }
+
+        public synchronized Map<String, Long> actionMillis() {
+            Map<String, Long> millis = new LinkedHashMap<>();
+            actionNanos.forEach((action, nanos) -> millis.put(action, nanos / 1_000_000));
+            return millis;
+        }
+
+        public synchronized double cost() {
+            return cost;
+        }
+    }
+}
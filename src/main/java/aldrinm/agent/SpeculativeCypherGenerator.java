@@ -0,0 +1,117 @@
+package aldrinm.agent;
+
+import aldrinm.agent.concurrency.ConcurrencyLimits;
+import aldrinm.agent.recording.CallRecorder;
+import aldrinm.agent.validation.CypherValidationPipeline;
+import com.embabel.agent.api.common.OperationContext;
+import com.embabel.common.ai.model.LlmOptions;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Generates several cypher candidates concurrently, each with its own model and temperature, and validates them as
+ * they arrive. The first candidate that passes wins and the others are cancelled. When none passes, the candidate with
+ * the best report is returned so that it can be rectified. This trades extra LLM and validation calls for fewer
+ * sequential rectify rounds.
+ */
+@Component
+public class SpeculativeCypherGenerator {
+
+    private final static Logger logger = LoggerFactory.getLogger(SpeculativeCypherGenerator.class);
+
+    public record Candidate(CypherStatementRequest cypherStatementRequest, ValidationReport validationReport) {
+    }
+
+    private final ConcurrencyLimits limits;
+    private final CallRecorder callRecorder;
+    private final boolean enabled;
+    private final int candidates;
+    private final List<String> models;
+    private final List<Double> temperatures;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public SpeculativeCypherGenerator(ConcurrencyLimits limits,
+                                      CallRecorder callRecorder,
+                                      @Value("${cypher.speculative.enabled:false}") boolean enabled,
+                                      @Value("${cypher.speculative.candidates:3}") int candidates,
+                                      @Value("${cypher.speculative.models:${embabel.models.defaultLlm}}") List<String> models,
+                                      @Value("${cypher.speculative.temperatures:0.0,0.4,0.8}") List<Double> temperatures) {
+        this.limits = limits;
+        this.callRecorder = callRecorder;
+        this.enabled = enabled;
+        this.candidates = Math.max(1, candidates);
+        this.models = models;
+        this.temperatures = temperatures;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param validationPipeline the validators of the database the question is about
+     */
+    public Candidate generate(String prompt, CypherValidationPipeline validationPipeline, OperationContext context) {
+        CompletionService<Candidate> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<Candidate>> futures = new ArrayList<>();
+        for (int i = 0; i < candidates; i++) {
+            String model = models.get(i % models.size());
+            double temperature = temperatures.get(i % temperatures.size());
+            LlmOptions llmOptions = LlmOptions.withModel(model).withTemperature(temperature);
+            //candidates with the same model and temperature are told apart by their number
+            String operation = "createObject " + model + " " + temperature + " #" + i;
+            futures.add(completionService.submit(() -> {
+                CypherStatementRequest cypherStatementRequest = limits.llm(() -> callRecorder.llm(operation, prompt,
+                        CypherStatementRequest.class, () -> context.ai()
+                                .withLlm(llmOptions)
+                                .createObject(prompt, CypherStatementRequest.class)));
+                return new Candidate(cypherStatementRequest, validationPipeline.validate(cypherStatementRequest.cypher()));
+            }));
+        }
+
+        List<Candidate> failed = new ArrayList<>();
+        RuntimeException lastError = null;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    Candidate candidate = completionService.take().get();
+                    if (GraphAgent.validationReportPasses(candidate.validationReport())) {
+                        logger.info("Speculative candidate {} of {} passed: {}", i + 1, futures.size(), candidate.cypherStatementRequest());
+                        return candidate;
+                    }
+                    failed.add(candidate);
+                } catch (ExecutionException ex) {
+                    logger.warn("A speculative candidate failed", ex.getCause());
+                    lastError = new RuntimeException("Could not generate the cypher", ex.getCause());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while generating the cypher", ex);
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
+
+        if (failed.isEmpty()) {
+            throw lastError;
+        }
+        Candidate best = failed.stream()
+                .max(Comparator.comparingDouble(c -> c.validationReport().score()))
+                .orElseThrow();
+        logger.info("None of the {} speculative candidates passed, continuing with {}", futures.size(), best.cypherStatementRequest());
+        return best;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
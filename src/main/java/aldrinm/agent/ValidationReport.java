@@ -3,9 +3,40 @@ package aldrinm.agent;
 import aldrinm.agent.cyver.CyverSyntaxValidatonResult;
 
 
+/**
+ * @param planResult what EXPLAIN found wrong with the plan, null when the plan was not checked
+ */
 public record ValidationReport(
         CyverSyntaxValidatonResult syntaxResult,
         CyverSyntaxValidatonResult schemaResult,
-        CyverSyntaxValidatonResult propertiesResult
+        CyverSyntaxValidatonResult propertiesResult,
+        CyverSyntaxValidatonResult planResult
 ) {
+
+    public ValidationReport(CyverSyntaxValidatonResult syntaxResult, CyverSyntaxValidatonResult schemaResult,
+                            CyverSyntaxValidatonResult propertiesResult) {
+        this(syntaxResult, schemaResult, propertiesResult, null);
+    }
+
+    /**
+     * A rough measure of how close the cypher is to passing, used to compare failing reports. Syntax that was not
+     * found valid scores nothing; otherwise each semantic validator, and the plan check, adds its score less a little
+     * for every problem it reported. A validator that gave no result, e.g. one cancelled by fail-fast, adds nothing, as the cypher is not
+     * known to pass it.
+     */
+    public double score() {
+        if (syntaxResult != null && !Boolean.TRUE.equals(syntaxResult.isValid())) {
+            return 0.0;
+        }
+        return 1.0 + score(schemaResult) + score(propertiesResult) + score(planResult);
+    }
+
+    private static double score(CyverSyntaxValidatonResult result) {
+        if (result == null) {
+            return 0.0;
+        }
+        double score = result.score() != null ? result.score() : 1.0;
+        int problems = result.metadata() != null ? result.metadata().size() : 0;
+        return score - 0.01 * problems;
+    }
 }
@@ -0,0 +1,269 @@
+package aldrinm.agent.batch;
+
+import aldrinm.agent.CypherAttempt;
+import aldrinm.agent.FormattedResponse;
+import aldrinm.agent.RectifyAbortedException;
+import aldrinm.agent.RunTracker;
+import com.embabel.agent.api.common.autonomy.AgentInvocation;
+import com.embabel.agent.core.AgentPlatform;
+import com.embabel.agent.domain.io.UserInput;
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Answers the questions of a JSONL file, many at a time on virtual threads, and appends a JSONL result for each as
+ * soon as it is answered. Questions already answered in the output file are skipped, so an interrupted run picks up
+ * where it left off when started again. The LLM, validator and Neo4j calls of all questions share the
+ * {@link aldrinm.agent.concurrency.ConcurrencyLimits}.
+ */
+@ShellComponent
+public class BatchRunner {
+
+    private final static Logger logger = LoggerFactory.getLogger(BatchRunner.class);
+
+    /**
+     * A line of the input; the request_id and body of a request file are understood too
+     */
+    public record BatchQuestion(@JsonAlias("request_id") @Nullable String id, @JsonAlias("body") String question) {
+    }
+
+    /**
+     * A line of the output
+     *
+     * @param actionMillis the time spent generating, validating, rectifying and executing the cypher and formatting
+     *                     the answer, as far as the question got
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record BatchResult(String id, String question, String status, @Nullable String response, @Nullable String cypher,
+                              @Nullable List<CypherAttempt> attempts, long elapsedMillis, Map<String, Long> actionMillis,
+                              double cost, @Nullable String error) {
+    }
+
+    public final static String OK = "ok";
+    public final static String ERROR = "error";
+
+    private final AgentPlatform agentPlatform;
+    private final RunTracker runTracker;
+    private final int concurrency;
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    public BatchRunner(AgentPlatform agentPlatform, RunTracker runTracker,
+                       @Value("${cypher.batch.concurrency:32}") int concurrency) {
+        this.agentPlatform = agentPlatform;
+        this.runTracker = runTracker;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    @ShellMethod(key = "batch", value = "Answers the questions of a JSONL file and writes the results to another")
+    public String batch(@ShellOption(help = "JSONL file of {\"id\": ..., \"question\": ...}") String input,
+                        @ShellOption(help = "JSONL file the results are appended to") String output) throws IOException {
+        Path inputPath = Path.of(input);
+        Path outputPath = Path.of(output);
+        Set<String> answered = answeredIds(outputPath);
+        if (!answered.isEmpty()) {
+            logger.info("Resuming, {} questions are already answered in {}", answered.size(), outputPath);
+        }
+        endWithNewline(outputPath);
+
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        int skipped = 0;
+        int invalid = 0;
+        //the first result that could not be written, the run fails with it once the questions in flight are done
+        AtomicReference<RuntimeException> writeFailure = new AtomicReference<>();
+        Semaphore inFlight = new Semaphore(concurrency);
+        try (BufferedReader reader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null && writeFailure.get() == null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                BatchQuestion question = parse(line, lineNumber);
+                if (question == null) {
+                    //not a question that a later run could answer, so not a failure either
+                    invalid++;
+                    continue;
+                }
+                String id = question.id() != null ? question.id() : String.valueOf(lineNumber);
+                if (answered.contains(id)) {
+                    skipped++;
+                    continue;
+                }
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        BatchResult result = answer(id, question.question());
+                        write(writer, result);
+                        //only counted once written, a result that was lost is neither
+                        (OK.equals(result.status()) ? succeeded : failed).incrementAndGet();
+                    } catch (RuntimeException ex) {
+                        writeFailure.compareAndSet(null, ex);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while running the batch", ex);
+        }
+        if (writeFailure.get() != null) {
+            throw writeFailure.get();
+        }
+        return String.format("Answered %d questions, %d failed, %d were already answered and %d lines were invalid. Results are in %s",
+                succeeded.get(), failed.get(), skipped, invalid, outputPath);
+    }
+
+    private BatchResult answer(String id, String question) {
+        long start = System.nanoTime();
+        UserInput userInput = new UserInput(question);
+        RunTracker.Run run = runTracker.track(userInput);
+        try {
+            FormattedResponse response = AgentInvocation.create(agentPlatform, FormattedResponse.class)
+                    .invoke(userInput);
+            return new BatchResult(id, question, OK, response.response(), response.cypher(), response.attempts(),
+                    elapsedMillis(start), run.actionMillis(), response.cost(), null);
+        } catch (RuntimeException ex) {
+            //the run knows what the LLM calls made before the failure cost
+            RectifyAbortedException aborted = aborted(ex);
+            if (aborted != null) {
+                //the cypher that came closest is kept, to see what the agent got stuck on
+                logger.warn("Gave up on question {}: {}", id, aborted.getMessage());
+                return new BatchResult(id, question, ERROR, null, aborted.best() != null ? aborted.best().cypher() : null,
+                        aborted.attempts(), elapsedMillis(start), run.actionMillis(), run.cost(), aborted.getMessage());
+            }
+            logger.warn("Could not answer question {}: {}", id, ex.getMessage());
+            return new BatchResult(id, question, ERROR, null, null, null, elapsedMillis(start), run.actionMillis(),
+                    run.cost(), ex.getMessage() != null ? ex.getMessage() : ex.getClass().getName());
+        } finally {
+            runTracker.release(userInput);
+        }
+    }
+
+    /**
+     * @return the exception the agent gave up with, wherever the platform wrapped it
+     */
+    @Nullable
+    private static RectifyAbortedException aborted(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RectifyAbortedException aborted) {
+                return aborted;
+            }
+        }
+        return null;
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    @Nullable
+    private BatchQuestion parse(String line, int lineNumber) {
+        try {
+            BatchQuestion question = objectMapper.readValue(line, BatchQuestion.class);
+            if (question.question() == null || question.question().isBlank()) {
+                logger.warn("Line {} has no question, skipping it", lineNumber);
+                return null;
+            }
+            return question;
+        } catch (JsonProcessingException ex) {
+            logger.warn("Line {} is not a valid question, skipping it: {}", lineNumber, ex.getOriginalMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes a whole line at a time so that results of concurrent questions don't interleave, and flushes it so that
+     * it survives an interruption
+     */
+    private void write(BufferedWriter writer, BatchResult result) {
+        try {
+            String line = objectMapper.writeValueAsString(result);
+            synchronized (writer) {
+                writer.write(line);
+                writer.newLine();
+                writer.flush();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not write the result of question " + result.id(), ex);
+        }
+    }
+
+    /**
+     * @return the ids of the questions answered successfully in a previous run; failed questions are tried again
+     */
+    private Set<String> answeredIds(Path outputPath) throws IOException {
+        Set<String> answered = new HashSet<>();
+        if (!Files.exists(outputPath)) {
+            return answered;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(outputPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    JsonNode result = objectMapper.readTree(line);
+                    if (result != null && OK.equals(result.path("status").asText()) && result.hasNonNull("id")) {
+                        answered.add(result.get("id").asText());
+                    }
+                } catch (JsonProcessingException ex) {
+                    //the last line is cut short when the previous run was killed mid-write
+                    logger.debug("Ignoring an unreadable result line: {}", ex.getOriginalMessage());
+                }
+            }
+        }
+        return answered;
+    }
+
+    /**
+     * Terminates a line cut short by an interruption, so that the next result starts on a line of its own
+     */
+    private static void endWithNewline(Path outputPath) throws IOException {
+        if (!Files.exists(outputPath) || Files.size(outputPath) == 0) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(outputPath.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            if (file.read() != '\n') {
+                file.write('\n');
+            }
+        }
+    }
+}
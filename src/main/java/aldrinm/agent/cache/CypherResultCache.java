@@ -0,0 +1,212 @@
+package aldrinm.agent.cache;
+
+import aldrinm.agent.CypherStatementRequest;
+import aldrinm.agent.schema.SchemaCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the cypher that passed validation for a question, so that repeated questions skip generation and
+ * validation. Entries are tied to the schema fingerprint they were validated against and are all dropped when it
+ * changes. Least recently used entries are evicted once the cache is full, and the cache can optionally be persisted
+ * to a file so that it survives restarts. The file is written in the background at most once per flush interval, and
+ * on shutdown, so that answering a question never waits on it.
+ */
+@Component
+public class CypherResultCache {
+
+    private final static Logger logger = LoggerFactory.getLogger(CypherResultCache.class);
+    private final static ObjectMapper objectMapper = new ObjectMapper();
+
+    private final SchemaCache schemaCache;
+    private final boolean enabled;
+    private final int maxEntries;
+    @Nullable
+    private final Path file;
+    private final Duration flushInterval;
+    private final LinkedHashMap<String, String> entries;
+    @Nullable
+    private String fingerprint;
+    //whether the entries changed since they were last written, guarded by this
+    private boolean dirty;
+    //only one write of the file at a time
+    private final Object fileLock = new Object();
+    @Nullable
+    private final ScheduledExecutorService flushExecutor;
+
+    public CypherResultCache(SchemaCache schemaCache,
+                             @Value("${cypher.result-cache.enabled:true}") boolean enabled,
+                             @Value("${cypher.result-cache.max-entries:1000}") int maxEntries,
+                             @Value("${cypher.result-cache.file:}") String file,
+                             @Value("${cypher.result-cache.flush-interval:5s}") Duration flushInterval) {
+        this.schemaCache = schemaCache;
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.file = file.isBlank() ? null : Path.of(file);
+        this.flushInterval = flushInterval;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        load();
+        if (this.file != null && enabled && !flushInterval.isZero() && !flushInterval.isNegative()) {
+            flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "cypher-cache");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flushExecutor.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        } else {
+            //without a flush interval the file is only written on shutdown
+            flushExecutor = null;
+        }
+    }
+
+    /**
+     * @return a cache with the same settings for the database of the given schema cache, kept in a file of its own
+     * next to this one's; it must be shut down once no longer used
+     */
+    public CypherResultCache forDatabase(SchemaCache schemaCache, String database) {
+        String databaseFile = file != null ? file.resolveSibling(database + "-" + file.getFileName()).toString() : "";
+        return new CypherResultCache(schemaCache, enabled, maxEntries, databaseFile, flushInterval);
+    }
+
+    /**
+     * @return the cypher that previously passed validation for this question against the current schema
+     */
+    public Optional<CypherStatementRequest> get(String question) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        String currentFingerprint = schemaCache.get().fingerprint();
+        if (currentFingerprint == null) {
+            return Optional.empty();
+        }
+        synchronized (this) {
+            dropIfSchemaChanged(currentFingerprint);
+            return Optional.ofNullable(entries.get(normalize(question))).map(CypherStatementRequest::new);
+        }
+    }
+
+    public void put(String question, CypherStatementRequest cypherStatementRequest) {
+        if (!enabled) {
+            return;
+        }
+        String currentFingerprint = schemaCache.get().fingerprint();
+        if (currentFingerprint == null) {
+            //without a fingerprint there is no telling when the entry goes stale
+            return;
+        }
+        synchronized (this) {
+            dropIfSchemaChanged(currentFingerprint);
+            entries.put(normalize(question), cypherStatementRequest.cypher());
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes the entries to the file if they changed since they were last written. Only the copy of the entries is
+     * made under the lock, questions are not held up by the write.
+     */
+    public void flush() {
+        if (file == null) {
+            return;
+        }
+        synchronized (fileLock) {
+            PersistedCache persisted;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                persisted = new PersistedCache(fingerprint, new LinkedHashMap<>(entries));
+                dirty = false;
+            }
+            if (!save(persisted)) {
+                //tried again on the next flush
+                synchronized (this) {
+                    dirty = true;
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdownNow();
+        }
+        flush();
+    }
+
+    /**
+     * Lower-cases the question, collapses whitespace and drops trailing punctuation, so that trivially different
+     * phrasings of the same question share an entry
+     */
+    static String normalize(String question) {
+        return question.toLowerCase(Locale.ROOT)
+                .replaceAll("\\s+", " ")
+                .replaceAll("[\\s?.!]+$", "")
+                .trim();
+    }
+
+    private void dropIfSchemaChanged(String currentFingerprint) {
+        if (!currentFingerprint.equals(fingerprint)) {
+            if (!entries.isEmpty()) {
+                logger.info("Schema fingerprint changed, dropping {} cached cypher statement(s)", entries.size());
+            }
+            entries.clear();
+            fingerprint = currentFingerprint;
+            dirty = true;
+        }
+    }
+
+    private void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try {
+            PersistedCache persisted = objectMapper.readValue(file.toFile(), PersistedCache.class);
+            fingerprint = persisted.fingerprint();
+            entries.putAll(persisted.entries());
+            logger.info("Loaded {} cached cypher statement(s) from {}", entries.size(), file);
+        } catch (IOException ex) {
+            logger.warn("Could not read the cypher cache from {}, starting empty", file, ex);
+        }
+    }
+
+    private boolean save(PersistedCache persisted) {
+        try {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), persisted);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException ex) {
+            logger.warn("Could not write the cypher cache to {}", file, ex);
+            return false;
+        }
+    }
+
+    record PersistedCache(@Nullable String fingerprint, LinkedHashMap<String, String> entries) {
+    }
+}
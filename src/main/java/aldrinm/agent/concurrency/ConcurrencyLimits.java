@@ -0,0 +1,72 @@
+package aldrinm.agent.concurrency;
+
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of concurrent LLM calls, CyVer validator calls and Neo4j queries, so that many questions can be
+ * answered at once on virtual threads without overwhelming any of them. A limit of 0 means unlimited.
+ */
+@Component
+public class ConcurrencyLimits {
+
+    @Nullable
+    private final Semaphore llm;
+    @Nullable
+    private final Semaphore validators;
+    @Nullable
+    private final Semaphore neo4j;
+
+    public ConcurrencyLimits(@Value("${cypher.concurrency.llm:8}") int llm,
+                             @Value("${cypher.concurrency.validators:8}") int validators,
+                             @Value("${cypher.concurrency.neo4j:16}") int neo4j) {
+        this.llm = semaphore(llm);
+        this.validators = semaphore(validators);
+        this.neo4j = semaphore(neo4j);
+    }
+
+    /**
+     * Limits that don't limit anything
+     */
+    public static ConcurrencyLimits unlimited() {
+        return new ConcurrencyLimits(0, 0, 0);
+    }
+
+    public <T> T llm(Supplier<T> call) {
+        return limited(llm, call);
+    }
+
+    public <T> T validator(Supplier<T> call) {
+        return limited(validators, call);
+    }
+
+    public <T> T neo4j(Supplier<T> call) {
+        return limited(neo4j, call);
+    }
+
+    @Nullable
+    private static Semaphore semaphore(int permits) {
+        return permits > 0 ? new Semaphore(permits, true) : null;
+    }
+
+    private static <T> T limited(@Nullable Semaphore semaphore, Supplier<T> call) {
+        if (semaphore == null) {
+            return call.get();
+        }
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a permit", ex);
+        }
+        try {
+            return call.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package aldrinm.agent.cyver;
+
+import aldrinm.agent.mcp.DatabaseServerParameters;
+import aldrinm.agent.mcp.McpToolsChangedEvent;
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import io.modelcontextprotocol.client.transport.StdioClientTransport;
+import io.modelcontextprotocol.spec.McpSchema;
+import jakarta.annotation.PreDestroy;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.mcp.client.autoconfigure.properties.McpStdioClientProperties;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A pool of identical CyVer MCP servers. The auto-configured cyver client is the first member; the rest are started
+ * from the same stdio connection settings. Each call leases the least busy healthy client, and clients whose process
+ * has died are replaced. Only the clients the pool started itself are ever closed by it; the auto-configured one
+ * belongs to Spring, so when it dies it is just dropped from the pool.
+ */
+@Component
+public class CyverClientPool {
+
+    private final static Logger logger = LoggerFactory.getLogger(CyverClientPool.class);
+    public final static String SERVER_NAME = "cyver";
+
+    private final List<PooledClient> clients = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextClient = new AtomicInteger();
+    @Nullable
+    private final ServerParameters serverParameters;
+    private final int size;
+    private final String connectionName;
+    private final Duration requestTimeout;
+    private final Duration healthCheckInterval;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ScheduledExecutorService healthExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cyver-pool-health");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CyverClientPool(List<McpSyncClient> mcpSyncClients,
+                           Optional<McpStdioClientProperties> stdioClientProperties,
+                           @Value("${cypher.cyver.pool.size:1}") int size,
+                           @Value("${cypher.cyver.pool.connection:cyver}") String connectionName,
+                           @Value("${spring.ai.mcp.client.request-timeout:30s}") Duration requestTimeout,
+                           @Value("${cypher.cyver.pool.health-check-interval:30s}") Duration healthCheckInterval,
+                           ApplicationEventPublisher eventPublisher) {
+        //the properties are missing when the MCP client is disabled, as it is when replaying recorded calls
+        this(mcpSyncClients.stream()
+                        .filter(c -> c.getServerInfo().name().equals(SERVER_NAME))
+                        .toList(),
+                stdioClientProperties
+                        .map(properties -> properties.toServerParameters().get(connectionName))
+                        .orElse(null),
+                size, connectionName, requestTimeout, healthCheckInterval, eventPublisher);
+    }
+
+    private CyverClientPool(List<McpSyncClient> cyverClients,
+                            @Nullable ServerParameters serverParameters,
+                            int size,
+                            String connectionName,
+                            Duration requestTimeout,
+                            Duration healthCheckInterval,
+                            ApplicationEventPublisher eventPublisher) {
+        this.serverParameters = serverParameters;
+        this.size = size;
+        this.connectionName = connectionName;
+        this.requestTimeout = requestTimeout;
+        this.healthCheckInterval = healthCheckInterval;
+        this.eventPublisher = eventPublisher;
+
+        cyverClients.forEach(c -> clients.add(new PooledClient(c, false)));
+        if (serverParameters == null && size > clients.size()) {
+            logger.warn("No stdio connection named '{}', the cyver pool is limited to {} client(s)", connectionName, clients.size());
+        }
+        while (serverParameters != null && clients.size() < size) {
+            clients.add(new PooledClient(startClient(), true));
+        }
+        logger.info("Started the cyver pool with {} client(s)", clients.size());
+
+        if (!healthCheckInterval.isZero() && !healthCheckInterval.isNegative()) {
+            healthExecutor.scheduleWithFixedDelay(this::checkHealth,
+                    healthCheckInterval.toMillis(), healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return a pool of the same size, with every client started from the same connection but validating against
+     * the given database; it must be shut down once no longer used
+     */
+    public CyverClientPool forDatabase(String database) {
+        ServerParameters databaseParameters = serverParameters != null
+                ? DatabaseServerParameters.forDatabase(serverParameters, database)
+                : null;
+        return new CyverClientPool(List.of(), databaseParameters, size, connectionName, requestTimeout,
+                healthCheckInterval, eventPublisher);
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * Runs the work with the least busy client of the pool
+     */
+    public <T> T withClient(Function<McpSyncClient, T> work) {
+        PooledClient pooled = lease();
+        pooled.inFlight.incrementAndGet();
+        try {
+            return work.apply(pooled.client);
+        } catch (RuntimeException ex) {
+            //the process may have died under us, check it without holding up the caller
+            healthExecutor.execute(() -> checkHealth(pooled));
+            throw ex;
+        } finally {
+            pooled.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return a callback for the tool that spreads its calls over the pool
+     */
+    public ToolCallback toolCallback(McpSchema.Tool tool) {
+        return new PooledToolCallback(this, tool);
+    }
+
+    /**
+     * Picks the client with the fewest calls in flight, starting from a rotating offset so that idle clients take
+     * turns
+     */
+    private PooledClient lease() {
+        if (clients.isEmpty()) {
+            throw new RuntimeException("Could not find the " + SERVER_NAME + " client");
+        }
+        int offset = Math.floorMod(nextClient.getAndIncrement(), clients.size());
+        PooledClient best = null;
+        for (int i = 0; i < clients.size(); i++) {
+            PooledClient candidate = clients.get((offset + i) % clients.size());
+            if (candidate.healthy && (best == null || candidate.inFlight.get() < best.inFlight.get())) {
+                best = candidate;
+            }
+        }
+        return best != null ? best : clients.get(offset);
+    }
+
+    private void checkHealth() {
+        clients.forEach(this::checkHealth);
+    }
+
+    private void checkHealth(PooledClient pooled) {
+        try {
+            pooled.client.ping();
+            pooled.healthy = true;
+        } catch (RuntimeException ex) {
+            pooled.healthy = false;
+            logger.warn("A cyver client failed its health check: {}", ex.getMessage());
+            restart(pooled);
+        }
+    }
+
+    private void restart(PooledClient pooled) {
+        if (serverParameters == null) {
+            return;
+        }
+        try {
+            McpSyncClient previous = pooled.client;
+            boolean startedPrevious = pooled.started;
+            pooled.client = startClient();
+            pooled.started = true;
+            pooled.healthy = true;
+            logger.info("Restarted a cyver client");
+            if (startedPrevious) {
+                closeQuietly(previous);
+            }
+            eventPublisher.publishEvent(new McpToolsChangedEvent(SERVER_NAME));
+        } catch (RuntimeException ex) {
+            logger.warn("Could not restart a cyver client: {}", ex.getMessage());
+        }
+    }
+
+    private McpSyncClient startClient() {
+        McpSyncClient client = McpClient.sync(new StdioClientTransport(serverParameters))
+                .requestTimeout(requestTimeout)
+                .clientInfo(new McpSchema.Implementation("embabel-cyver-pool", "1.0.0"))
+                .toolsChangeConsumer(tools -> eventPublisher.publishEvent(new McpToolsChangedEvent(SERVER_NAME)))
+                .build();
+        client.initialize();
+        return client;
+    }
+
+    private static void closeQuietly(McpSyncClient client) {
+        try {
+            client.close();
+        } catch (RuntimeException ex) {
+            logger.debug("Ignoring failure to close a cyver client", ex);
+        }
+    }
+
+    /**
+     * Stops the clients the pool started itself, the auto-configured one is closed by Spring
+     */
+    @PreDestroy
+    public void shutdown() {
+        healthExecutor.shutdownNow();
+        clients.stream()
+                .filter(pooled -> pooled.started)
+                .forEach(pooled -> closeQuietly(pooled.client));
+    }
+
+    private static class PooledClient {
+        volatile McpSyncClient client;
+        volatile boolean started;
+        volatile boolean healthy = true;
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        PooledClient(McpSyncClient client, boolean started) {
+            this.client = client;
+            this.started = started;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package aldrinm.agent.cyver;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import org.springframework.ai.mcp.McpToolUtils;
+import org.springframework.ai.mcp.SyncMcpToolCallback;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+/**
+ * A tool callback that leases a client from the pool for every call
+ */
+class PooledToolCallback implements ToolCallback {
+
+    private final CyverClientPool pool;
+    private final McpSchema.Tool tool;
+    private final ToolDefinition toolDefinition;
+
+    PooledToolCallback(CyverClientPool pool, McpSchema.Tool tool) {
+        this.pool = pool;
+        this.tool = tool;
+        //as SyncMcpToolCallback builds it, but prefixed with the server name, as the clients of the pool are named apart
+        this.toolDefinition = ToolDefinition.builder()
+                .name(McpToolUtils.prefixedToolName(CyverClientPool.SERVER_NAME, tool.name()))
+                .description(tool.description())
+                .inputSchema(ModelOptionsUtils.toJsonString(tool.inputSchema()))
+                .build();
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return toolDefinition;
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return pool.withClient(client -> new SyncMcpToolCallback(client, tool).call(toolInput));
+    }
+}
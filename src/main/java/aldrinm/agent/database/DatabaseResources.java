@@ -0,0 +1,74 @@
+package aldrinm.agent.database;
+
+import aldrinm.agent.cache.CypherResultCache;
+import aldrinm.agent.execution.CypherExecutor;
+import aldrinm.agent.repair.CypherRepairer;
+import aldrinm.agent.schema.SchemaCache;
+import aldrinm.agent.validation.CypherValidationPipeline;
+
+/**
+ * Everything the agent uses to answer questions about one database: its schema, its validators, the cypher already
+ * validated against it and its Neo4j sessions
+ */
+public final class DatabaseResources {
+
+    private final String name;
+    private final SchemaCache schemaCache;
+    private final CypherValidationPipeline validationPipeline;
+    private final CypherResultCache resultCache;
+    private final CypherExecutor cypherExecutor;
+    private final CypherRepairer cypherRepairer;
+    /**
+     * Stops whatever was started for the database, nothing for the default one
+     */
+    private final Runnable closer;
+    private volatile long lastUsed = System.nanoTime();
+
+    public DatabaseResources(String name, SchemaCache schemaCache, CypherValidationPipeline validationPipeline,
+                             CypherResultCache resultCache, CypherExecutor cypherExecutor, CypherRepairer cypherRepairer,
+                             Runnable closer) {
+        this.name = name;
+        this.schemaCache = schemaCache;
+        this.validationPipeline = validationPipeline;
+        this.resultCache = resultCache;
+        this.cypherExecutor = cypherExecutor;
+        this.cypherRepairer = cypherRepairer;
+        this.closer = closer;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public SchemaCache schemaCache() {
+        return schemaCache;
+    }
+
+    public CypherValidationPipeline validationPipeline() {
+        return validationPipeline;
+    }
+
+    public CypherResultCache resultCache() {
+        return resultCache;
+    }
+
+    public CypherExecutor cypherExecutor() {
+        return cypherExecutor;
+    }
+
+    public CypherRepairer cypherRepairer() {
+        return cypherRepairer;
+    }
+
+    void touch() {
+        lastUsed = System.nanoTime();
+    }
+
+    long idleNanos() {
+        return System.nanoTime() - lastUsed;
+    }
+
+    void close() {
+        closer.run();
+    }
+}
@@ -0,0 +1,283 @@
+package aldrinm.agent.database;
+
+import aldrinm.agent.cache.CypherResultCache;
+import aldrinm.agent.cyver.CyverClientPool;
+import aldrinm.agent.execution.CypherExecutor;
+import aldrinm.agent.mcp.DatabaseServerParameters;
+import aldrinm.agent.mcp.McpToolRegistry;
+import aldrinm.agent.recording.CallRecorder;
+import aldrinm.agent.repair.CypherRepairer;
+import aldrinm.agent.schema.SchemaCache;
+import aldrinm.agent.validation.CypherValidationPipeline;
+import com.embabel.agent.domain.io.UserInput;
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import io.modelcontextprotocol.client.transport.StdioClientTransport;
+import io.modelcontextprotocol.spec.McpSchema;
+import jakarta.annotation.PreDestroy;
+import org.jetbrains.annotations.Nullable;
+import org.neo4j.driver.Driver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.mcp.client.autoconfigure.properties.McpStdioClientProperties;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.neo4j.core.DatabaseSelectionProvider;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Routes each question to the database it targets, so that one instance can answer questions about many graphs. A
+ * question starting with {@code @<database>} is answered from that database, any other from the configured one. Only
+ * the databases listed as allowed can be asked about, so that a question can't reach e.g. the system database; a
+ * question starting with any other {@code @name} is answered from the configured database as it is. The other
+ * databases get their own schema cache, validators, cached cypher and Neo4j sessions, along with their own
+ * mcp-neo4j-cypher and CyVer servers started from the configured connections. These are created on the first
+ * question about the database and stopped once it has not been asked about for the idle timeout.
+ */
+@Component
+public class DatabaseRouter {
+
+    private final static Logger logger = LoggerFactory.getLogger(DatabaseRouter.class);
+
+    //database names as Neo4j allows them, e.g. @movies or @sales-2024
+    private final static Pattern TARGET = Pattern.compile("\\s*@([A-Za-z][A-Za-z0-9.\\-]*)\\s+(.+)", Pattern.DOTALL);
+
+    /**
+     * A question without its database prefix, and the resources of the database it is about
+     */
+    public record Route(String question, DatabaseResources database) {
+    }
+
+    private final DatabaseResources defaultDatabase;
+    private final McpToolRegistry toolRegistry;
+    private final CyverClientPool cyverClientPool;
+    private final Driver driver;
+    @Nullable
+    private final ServerParameters neo4jServerParameters;
+    private final CallRecorder callRecorder;
+    private final boolean enabled;
+    private final String neo4jConnection;
+    private final Duration requestTimeout;
+    private final Duration idleTimeout;
+    private final Set<String> allowed;
+    //opened outside of the map, so that starting the servers of one database doesn't hold up the others
+    private final Map<String, CompletableFuture<DatabaseResources>> databases = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "database-eviction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public DatabaseRouter(SchemaCache schemaCache,
+                          CypherValidationPipeline validationPipeline,
+                          CypherResultCache resultCache,
+                          CypherExecutor cypherExecutor,
+                          CypherRepairer cypherRepairer,
+                          McpToolRegistry toolRegistry,
+                          CyverClientPool cyverClientPool,
+                          Driver driver,
+                          Optional<McpStdioClientProperties> stdioClientProperties,
+                          CallRecorder callRecorder,
+                          @Value("${cypher.databases.enabled:true}") boolean enabled,
+                          @Value("${spring.data.neo4j.database:}") String defaultDatabase,
+                          @Value("${cypher.databases.neo4j-connection:mcp-neo4j-cypher}") String neo4jConnection,
+                          @Value("${spring.ai.mcp.client.request-timeout:30s}") Duration requestTimeout,
+                          @Value("${cypher.databases.idle-timeout:10m}") Duration idleTimeout,
+                          @Value("${cypher.databases.allowed:}") List<String> allowed) {
+        this.defaultDatabase = new DatabaseResources(defaultDatabase.toLowerCase(Locale.ROOT), schemaCache,
+                validationPipeline, resultCache, cypherExecutor, cypherRepairer, () -> {
+        });
+        this.toolRegistry = toolRegistry;
+        this.cyverClientPool = cyverClientPool;
+        this.driver = driver;
+        this.neo4jServerParameters = stdioClientProperties
+                .map(properties -> properties.toServerParameters().get(neo4jConnection))
+                .orElse(null);
+        this.callRecorder = callRecorder;
+        this.enabled = enabled;
+        this.neo4jConnection = neo4jConnection;
+        this.requestTimeout = requestTimeout;
+        this.idleTimeout = idleTimeout;
+        this.allowed = allowed.stream()
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .map(name -> name.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+        if (!idleTimeout.isZero() && !idleTimeout.isNegative()) {
+            long interval = Math.min(idleTimeout.toMillis(), Duration.ofMinutes(1).toMillis());
+            evictionExecutor.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public Route route(UserInput userInput) {
+        return route(userInput.getContent());
+    }
+
+    /**
+     * @return the question, and the database named by its {@code @<database>} prefix if it has one. A prefix naming
+     * neither the configured database nor an allowed one is taken as part of the question, as in "@batman minifigs?"
+     */
+    public Route route(String content) {
+        Matcher matcher = TARGET.matcher(content);
+        if (!enabled || !matcher.matches() || !isRoutable(matcher.group(1))) {
+            return new Route(content, defaultDatabase);
+        }
+        return new Route(matcher.group(2).trim(), database(matcher.group(1)));
+    }
+
+    private boolean isRoutable(String name) {
+        String database = name.toLowerCase(Locale.ROOT);
+        return database.equals(defaultDatabase.name()) || allowed.contains(database);
+    }
+
+    /**
+     * @return the resources of the database, created if this is the first question about it since it was last idle
+     */
+    public DatabaseResources database(String name) {
+        String database = name.toLowerCase(Locale.ROOT);
+        if (database.equals(defaultDatabase.name())) {
+            return defaultDatabase;
+        }
+        if (!allowed.contains(database)) {
+            throw new IllegalArgumentException("Database " + name + " is not one of cypher.databases.allowed " + allowed);
+        }
+        while (true) {
+            CompletableFuture<DatabaseResources> opening = new CompletableFuture<>();
+            CompletableFuture<DatabaseResources> future = databases.putIfAbsent(database, opening);
+            if (future == null) {
+                future = opening;
+                try {
+                    opening.complete(open(database));
+                } catch (RuntimeException ex) {
+                    databases.remove(database, opening);
+                    opening.completeExceptionally(ex);
+                    throw ex;
+                }
+            }
+            DatabaseResources resources;
+            try {
+                resources = future.join();
+            } catch (CompletionException ex) {
+                throw ex.getCause() instanceof RuntimeException cause ? cause : ex;
+            }
+            //touched under the lock of the entry, so that it can't be evicted between being found and being used
+            CompletableFuture<DatabaseResources> found = future;
+            if (databases.computeIfPresent(database, (key, current) -> {
+                if (current == found) {
+                    resources.touch();
+                }
+                return current;
+            }) == found) {
+                return resources;
+            }
+            //evicted in the meantime, open it again
+        }
+    }
+
+    private DatabaseResources open(String database) {
+        logger.info("Opening database {}", database);
+        McpSyncClient neo4jClient = null;
+        CyverClientPool databaseCyverPool = null;
+        try {
+            //nothing is started when replaying, the calls are answered from the recordings
+            neo4jClient = callRecorder.isReplaying() ? null : startNeo4jClient(database);
+            databaseCyverPool = cyverClientPool.forDatabase(database);
+            McpToolRegistry databaseToolRegistry = toolRegistry.forDatabase(database,
+                    neo4jClient != null ? List.of(neo4jClient) : List.of(), databaseCyverPool);
+            SchemaCache schemaCache = defaultDatabase.schemaCache().forDatabase(databaseToolRegistry,
+                    Neo4jClient.create(driver, DatabaseSelectionProvider.createStaticDatabaseSelectionProvider(database)));
+            CypherValidationPipeline validationPipeline = defaultDatabase.validationPipeline().forDatabase(databaseToolRegistry, database);
+            CypherResultCache resultCache = defaultDatabase.resultCache().forDatabase(schemaCache, database);
+            McpSyncClient startedNeo4jClient = neo4jClient;
+            CyverClientPool startedCyverPool = databaseCyverPool;
+            return new DatabaseResources(database, schemaCache, validationPipeline, resultCache,
+                    defaultDatabase.cypherExecutor().forDatabase(database),
+                    defaultDatabase.cypherRepairer().forDatabase(schemaCache),
+                    () -> {
+                        schemaCache.shutdown();
+                        validationPipeline.shutdown();
+                        resultCache.shutdown();
+                        startedCyverPool.shutdown();
+                        closeQuietly(startedNeo4jClient);
+                    });
+        } catch (RuntimeException ex) {
+            if (databaseCyverPool != null) {
+                databaseCyverPool.shutdown();
+            }
+            closeQuietly(neo4jClient);
+            throw new RuntimeException("Could not open database " + database, ex);
+        }
+    }
+
+    private McpSyncClient startNeo4jClient(String database) {
+        if (neo4jServerParameters == null) {
+            throw new RuntimeException("No stdio connection named '" + neo4jConnection + "' to start for database " + database);
+        }
+        McpSyncClient client = McpClient.sync(new StdioClientTransport(DatabaseServerParameters.forDatabase(neo4jServerParameters, database)))
+                .requestTimeout(requestTimeout)
+                .clientInfo(new McpSchema.Implementation("embabel-" + database, "1.0.0"))
+                .build();
+        client.initialize();
+        return client;
+    }
+
+    private void evictIdle() {
+        for (String database : databases.keySet()) {
+            DatabaseResources[] evicted = new DatabaseResources[1];
+            databases.computeIfPresent(database, (key, future) -> {
+                //still being opened
+                if (!future.isDone()) {
+                    return future;
+                }
+                DatabaseResources resources = future.join();
+                if (resources.idleNanos() < idleTimeout.toNanos()) {
+                    return future;
+                }
+                evicted[0] = resources;
+                return null;
+            });
+            if (evicted[0] != null) {
+                logger.info("Closing database {}, idle for more than {}", database, idleTimeout);
+                evicted[0].close();
+            }
+        }
+    }
+
+    private static void closeQuietly(@Nullable McpSyncClient client) {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.close();
+        } catch (RuntimeException ex) {
+            logger.debug("Ignoring failure to close an MCP client", ex);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        evictionExecutor.shutdownNow();
+        databases.values().stream()
+                .filter(future -> future.isDone() && !future.isCompletedExceptionally())
+                .map(CompletableFuture::join)
+                .forEach(DatabaseResources::close);
+        databases.clear();
+    }
+}
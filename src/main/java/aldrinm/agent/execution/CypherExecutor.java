@@ -0,0 +1,173 @@
+package aldrinm.agent.execution;
+
+import aldrinm.agent.CypherExecutionResult;
+import aldrinm.agent.concurrency.ConcurrencyLimits;
+import aldrinm.agent.metrics.AgentMetrics;
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.TransactionConfig;
+import org.neo4j.driver.types.Node;
+import org.neo4j.driver.types.Path;
+import org.neo4j.driver.types.Relationship;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Executes cypher by streaming its records rather than materializing the whole result. Records are converted as they
+ * arrive, and reading stops at the row or size limit, at which point the rest of the result is discarded on the
+ * server. The transaction is bounded by a timeout.
+ */
+@Component
+public class CypherExecutor {
+
+    private final static Logger logger = LoggerFactory.getLogger(CypherExecutor.class);
+
+    private final Driver driver;
+    private final AgentMetrics metrics;
+    private final ConcurrencyLimits limits;
+    private final String database;
+    private final int maxRows;
+    private final long maxBytes;
+    private final Duration timeout;
+
+    public CypherExecutor(Driver driver,
+                          AgentMetrics metrics,
+                          ConcurrencyLimits limits,
+                          @Value("${spring.data.neo4j.database:}") String database,
+                          @Value("${cypher.execution.max-rows:1000}") int maxRows,
+                          @Value("${cypher.execution.max-size:1MB}") DataSize maxSize,
+                          @Value("${cypher.execution.timeout:30s}") Duration timeout) {
+        this.driver = driver;
+        this.metrics = metrics;
+        this.limits = limits;
+        this.database = database;
+        this.maxRows = maxRows;
+        this.maxBytes = maxSize.toBytes();
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return an executor with the same limits that runs the cypher against the given database
+     */
+    public CypherExecutor forDatabase(String database) {
+        return new CypherExecutor(driver, metrics, limits, database, maxRows, DataSize.ofBytes(maxBytes), timeout);
+    }
+
+    public CypherExecutionResult execute(String cypher) {
+        return limits.neo4j(() -> metrics.timeExecution(() -> stream(cypher)));
+    }
+
+    private CypherExecutionResult stream(String cypher) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        boolean truncated = false;
+        long bytes = 0;
+        try (Session session = driver.session(sessionConfig())) {
+            Result result = session.run(cypher, TransactionConfig.builder().withTimeout(timeout).build());
+            while (result.hasNext()) {
+                if (rows.size() >= maxRows) {
+                    truncated = true;
+                    break;
+                }
+                Map<String, Object> row = convertRecord(result.next());
+                bytes += estimateSize(row);
+                if (bytes > maxBytes && !rows.isEmpty()) {
+                    truncated = true;
+                    break;
+                }
+                rows.add(row);
+            }
+            //closing the session discards whatever is left of the result
+        }
+        if (truncated) {
+            logger.info("Result truncated to {} rows", rows.size());
+        }
+        return new CypherExecutionResult(cypher, rows, truncated);
+    }
+
+    private SessionConfig sessionConfig() {
+        SessionConfig.Builder builder = SessionConfig.builder()
+                //the cypher comes from the LLM, Neo4j refuses to run any write in it
+                .withDefaultAccessMode(AccessMode.READ)
+                //don't let the driver pull far more records than we are going to keep
+                .withFetchSize(Math.max(1, Math.min(maxRows + 1, 1000)));
+        if (!database.isBlank()) {
+            builder.withDatabase(database);
+        }
+        return builder.build();
+    }
+
+    private static Map<String, Object> convertRecord(Record record) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (String key : record.keys()) {
+            row.put(key, convert(record.get(key).asObject()));
+        }
+        return row;
+    }
+
+    /**
+     * Converts graph values into plain maps and lists; nodes become their properties as before
+     */
+    private static Object convert(Object value) {
+        if (value instanceof Node node) {
+            return node.asMap();
+        }
+        if (value instanceof Relationship relationship) {
+            return Map.of("type", relationship.type(), "properties", relationship.asMap());
+        }
+        if (value instanceof Path path) {
+            List<Object> elements = new ArrayList<>();
+            elements.add(convert(path.start()));
+            for (Path.Segment segment : path) {
+                elements.add(convert(segment.relationship()));
+                elements.add(convert(segment.end()));
+            }
+            return elements;
+        }
+        if (value instanceof List<?> list) {
+            return list.stream().map(CypherExecutor::convert).toList();
+        }
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> converted = new LinkedHashMap<>();
+            map.forEach((k, v) -> converted.put(k, convert(v)));
+            return converted;
+        }
+        return value;
+    }
+
+    /**
+     * A rough estimate of the memory a converted value takes, and of its length once stringified for the prompt
+     */
+    private static long estimateSize(Object value) {
+        if (value == null) {
+            return 4;
+        }
+        if (value instanceof CharSequence text) {
+            return 2L * text.length();
+        }
+        if (value instanceof Map<?, ?> map) {
+            long size = 16;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Collection<?> collection) {
+            long size = 16;
+            for (Object element : collection) {
+                size += estimateSize(element);
+            }
+            return size;
+        }
+        return 16;
+    }
+}
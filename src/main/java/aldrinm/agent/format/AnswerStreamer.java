@@ -0,0 +1,102 @@
+package aldrinm.agent.format;
+
+import aldrinm.agent.metrics.AgentMetrics;
+import com.embabel.common.ai.model.Llm;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Streams the formatted answer from the custom model chunk by chunk, so that the user can start reading it as soon
+ * as the cypher has run. The embabel prompt runner only returns the text once it is complete, so the chat model of
+ * the {@link Llm} is called directly, and its usage recorded here.
+ */
+@Component
+public class AnswerStreamer {
+
+    private final static Logger logger = LoggerFactory.getLogger(AnswerStreamer.class);
+
+    /**
+     * @param cost of the call in USD, 0 when the model does not report its usage while streaming
+     */
+    public record StreamedAnswer(String text, double cost) {
+    }
+
+    @Nullable
+    private final Llm llm;
+    private final AgentMetrics metrics;
+    private final boolean enabled;
+    private final Duration timeout;
+
+    public AnswerStreamer(@Qualifier("customModel") @Nullable Llm llm,
+                          AgentMetrics metrics,
+                          @Value("${cypher.format.streaming.enabled:false}") boolean enabled,
+                          @Value("${cypher.format.streaming.timeout:60s}") Duration timeout) {
+        this.llm = llm;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.timeout = timeout;
+    }
+
+    public boolean isEnabled() {
+        return enabled && llm != null;
+    }
+
+    /**
+     * Streams the answer to the prompt, passing every chunk to the consumer as it arrives
+     * @return the whole answer
+     */
+    public StreamedAnswer stream(String prompt, Consumer<String> onChunk) {
+        Llm model = Objects.requireNonNull(llm, "Streaming needs the customModel llm");
+        StringBuilder text = new StringBuilder();
+        AtomicReference<Usage> usage = new AtomicReference<>();
+        ChatClient.create(model.getModel())
+                .prompt()
+                .user(prompt)
+                .stream()
+                .chatResponse()
+                .doOnNext(response -> {
+                    String chunk = chunk(response);
+                    if (chunk != null && !chunk.isEmpty()) {
+                        text.append(chunk);
+                        onChunk.accept(chunk);
+                    }
+                    //usage, if reported at all, arrives with the last chunk
+                    Usage chunkUsage = response.getMetadata().getUsage();
+                    if (chunkUsage != null && chunkUsage.getTotalTokens() != null && chunkUsage.getTotalTokens() > 0) {
+                        usage.set(chunkUsage);
+                    }
+                })
+                .blockLast(timeout);
+
+        double cost = 0;
+        Usage reported = usage.get();
+        if (reported != null) {
+            int inputTokens = Objects.requireNonNullElse(reported.getPromptTokens(), 0);
+            int outputTokens = Objects.requireNonNullElse(reported.getCompletionTokens(), 0);
+            cost = model.getPricingModel() != null ? model.getPricingModel().costOf(inputTokens, outputTokens) : 0;
+            metrics.recordLlmUsage(model.getName(), inputTokens, outputTokens, cost);
+        } else {
+            logger.debug("{} did not report its usage while streaming", model.getName());
+        }
+        return new StreamedAnswer(text.toString(), cost);
+    }
+
+    @Nullable
+    private static String chunk(ChatResponse response) {
+        return response.getResult() != null && response.getResult().getOutput() != null
+                ? response.getResult().getOutput().getText()
+                : null;
+    }
+}
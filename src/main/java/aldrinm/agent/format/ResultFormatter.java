@@ -0,0 +1,219 @@
+package aldrinm.agent.format;
+
+import aldrinm.agent.CypherExecutionResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.temporal.TemporalAccessor;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Renders small results without the LLM: nothing found, a single value, a single row, or a few rows of a few plain
+ * columns, phrased from the question and the column names. Anything larger or with nested values is left to the LLM,
+ * for which the result is encoded compactly with the column names given once, and so is a count asked with
+ * qualifiers, as in "how many sets were released in 2005", which a template would drop.
+ */
+@Component
+public class ResultFormatter {
+
+    //"how many of the distinct themes are there" counts themes, with nothing said about which
+    private final static Pattern BARE_HOW_MANY = Pattern.compile(
+            "(?i)^\\s*how\\s+many(?:\\s+(?:of|the|different|distinct|unique|total|separate))*(?:\\s+([a-z][a-z0-9_-]*))??"
+                    + "(?:\\s+(?:are|is|were|was|do|does))?"
+                    + "(?:\\s+(?:there|available|exist|exists|we\\s+have|in\\s+total|altogether|in\\s+the\\s+(?:database|graph)))*"
+                    + "\\s*[?.!]*\\s*$");
+    private final static Pattern HOW_MANY = Pattern.compile("(?i)\\bhow\\s+many\\b");
+    //what follows "how many" when the question doesn't name what is counted, as in "how many are there"
+    private final static Set<String> NOT_NOUNS = Set.of("are", "is", "were", "was", "do", "does", "did", "have", "has",
+            "had", "can", "will", "would", "should", "of", "the", "a", "an");
+    private final static Pattern COUNT_PREFIX = Pattern.compile("^(?:num|number|count|total)(?: of)?(?: (.+))?$");
+    private final static Pattern COUNT_SUFFIX = Pattern.compile("^(.+) (?:count|total)$");
+    private final static ObjectMapper objectMapper = JsonMapper.builder().build();
+
+    private final boolean enabled;
+    private final int maxRows;
+    private final int maxColumns;
+
+    public ResultFormatter(@Value("${cypher.format.enabled:true}") boolean enabled,
+                           @Value("${cypher.format.max-rows:10}") int maxRows,
+                           @Value("${cypher.format.max-columns:4}") int maxColumns) {
+        this.enabled = enabled;
+        this.maxRows = maxRows;
+        this.maxColumns = maxColumns;
+    }
+
+    /**
+     * @return the result in plain text, or empty if it should be left to the LLM
+     */
+    public Optional<String> format(String question, CypherExecutionResult executionResult) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(executionResult.result());
+        if (rows.isEmpty()) {
+            return Optional.of("I could not find anything that answers the question.");
+        }
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        boolean tabular = columns.size() <= maxColumns
+                && rows.size() <= maxRows
+                && rows.stream().allMatch(row -> row.keySet().equals(rows.get(0).keySet())
+                        && row.values().stream().allMatch(ResultFormatter::isPlain));
+        if (!tabular || columns.isEmpty()) {
+            return Optional.empty();
+        }
+
+        String text;
+        if (rows.size() == 1 && columns.size() == 1) {
+            text = single(question, columns.get(0), rows.get(0).get(columns.get(0)));
+            if (text == null) {
+                return Optional.empty();
+            }
+        } else if (rows.size() == 1) {
+            text = "Here is what I found:\n" + columns.stream()
+                    .map(column -> "- " + capitalize(humanize(column)) + ": " + value(rows.get(0).get(column)))
+                    .collect(Collectors.joining("\n"));
+        } else if (columns.size() == 1) {
+            text = "Here are the " + rows.size() + " results:\n" + rows.stream()
+                    .map(row -> "- " + value(row.get(columns.get(0))))
+                    .collect(Collectors.joining("\n"));
+        } else {
+            text = "Here are the " + rows.size() + " results:\n" + rows.stream()
+                    .map(row -> "- " + columns.stream()
+                            .map(column -> humanize(column) + ": " + value(row.get(column)))
+                            .collect(Collectors.joining(", ")))
+                    .collect(Collectors.joining("\n"));
+        }
+        if (executionResult.truncated()) {
+            text += "\nThere may be more results.";
+        }
+        return Optional.of(text);
+    }
+
+    /**
+     * Encodes the result for the LLM as the column names followed by one JSON array per row, rather than repeating
+     * every column name in every row
+     */
+    public String encode(CypherExecutionResult executionResult) {
+        Set<String> columns = new LinkedHashSet<>();
+        executionResult.result().forEach(row -> columns.addAll(row.keySet()));
+        StringBuilder encoded = new StringBuilder("columns: ").append(json(columns)).append("\nrows:");
+        for (Map<String, Object> row : executionResult.result()) {
+            List<Object> values = new ArrayList<>(columns.size());
+            columns.forEach(column -> values.add(row.get(column)));
+            encoded.append('\n').append(json(values));
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Phrases a single value: a count as "There are 42 minifigs.", anything else as "The name is Minifig 1."
+     * @return the phrase, or null if the count was asked with more than the template can say
+     */
+    @Nullable
+    private static String single(String question, String column, Object value) {
+        if (value instanceof Number number && isWhole(number)) {
+            Matcher bare = BARE_HOW_MANY.matcher(question);
+            boolean isBare = bare.matches();
+            String noun = isBare && bare.group(1) != null && !NOT_NOUNS.contains(bare.group(1).toLowerCase(Locale.ROOT))
+                    ? bare.group(1).toLowerCase(Locale.ROOT)
+                    : countedNoun(column);
+            if (noun != null || HOW_MANY.matcher(question).find()) {
+                if (!isBare || noun == null) {
+                    return null;
+                }
+                long count = number.longValue();
+                return count == 1
+                        ? "There is 1 " + singular(noun) + "."
+                        : "There are " + value(value) + " " + noun + ".";
+            }
+        }
+        return "The " + humanize(column) + " is " + value(value) + ".";
+    }
+
+    /**
+     * @return what the column counts: minifigs for numMinifigs, num_minifigs or minifigCount, but nothing for a bare
+     * count(n)
+     */
+    @Nullable
+    private static String countedNoun(String column) {
+        String name = humanize(column);
+        Matcher prefix = COUNT_PREFIX.matcher(name);
+        if (prefix.matches()) {
+            return prefix.group(1) != null ? plural(prefix.group(1)) : null;
+        }
+        Matcher suffix = COUNT_SUFFIX.matcher(name);
+        return suffix.matches() ? plural(suffix.group(1)) : null;
+    }
+
+    private static boolean isPlain(Object value) {
+        return value == null || value instanceof CharSequence || value instanceof Number || value instanceof Boolean
+                || value instanceof TemporalAccessor;
+    }
+
+    private static boolean isWhole(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte
+                || (number instanceof Double d && d == Math.rint(d) && !d.isInfinite());
+    }
+
+    private static String value(Object value) {
+        if (value == null) {
+            return "unknown";
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                return String.valueOf(number);
+            }
+            return new BigDecimal(number).setScale(2, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Turns a column name such as "numParts", "num_parts", "s.name" or "count(n)" into words
+     */
+    static String humanize(String column) {
+        String name = column.replaceAll("^[a-zA-Z_][a-zA-Z0-9_]*\\.", "").replaceAll("\\(.*\\)", "");
+        return name.replaceAll("([a-z0-9])([A-Z])", "$1 $2")
+                .replaceAll("[_\\W]+", " ")
+                .trim()
+                .toLowerCase(Locale.ROOT);
+    }
+
+    private static String capitalize(String text) {
+        return text.isEmpty() ? text : Character.toUpperCase(text.charAt(0)) + text.substring(1);
+    }
+
+    private static String plural(String noun) {
+        if (noun.endsWith("s")) {
+            return noun;
+        }
+        return noun.endsWith("y") && noun.length() > 1 && "aeiou".indexOf(noun.charAt(noun.length() - 2)) < 0
+                ? noun.substring(0, noun.length() - 1) + "ies"
+                : noun + "s";
+    }
+
+    private static String singular(String noun) {
+        if (noun.endsWith("ies") && noun.length() > 4) {
+            return noun.substring(0, noun.length() - 3) + "y";
+        }
+        return noun.endsWith("s") && !noun.endsWith("ss") ? noun.substring(0, noun.length() - 1) : noun;
+    }
+
+    private static String json(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException ex) {
+            throw new RuntimeException("Failed to encode the result", ex);
+        }
+    }
+}
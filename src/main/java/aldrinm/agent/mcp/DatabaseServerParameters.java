@@ -0,0 +1,42 @@
+package aldrinm.agent.mcp;
+
+import io.modelcontextprotocol.client.transport.ServerParameters;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites the stdio settings of an MCP server bound to one database, such as mcp-neo4j-cypher or CyVer, so that a
+ * copy of the server can be started against another database. The database is given to these servers as
+ * NEO4J_DATABASE, either in their environment or, for a docker container, as a -e argument.
+ */
+public final class DatabaseServerParameters {
+
+    public final static String DATABASE_VARIABLE = "NEO4J_DATABASE";
+
+    private DatabaseServerParameters() {
+    }
+
+    public static ServerParameters forDatabase(ServerParameters parameters, String database) {
+        List<String> args = new ArrayList<>();
+        boolean inArgs = false;
+        for (String arg : parameters.getArgs()) {
+            if (arg.startsWith(DATABASE_VARIABLE + "=")) {
+                args.add(DATABASE_VARIABLE + "=" + database);
+                inArgs = true;
+            } else {
+                args.add(arg);
+            }
+        }
+        Map<String, String> env = new HashMap<>(parameters.getEnv());
+        if (env.containsKey(DATABASE_VARIABLE) || !inArgs) {
+            env.put(DATABASE_VARIABLE, database);
+        }
+        return ServerParameters.builder(parameters.getCommand())
+                .args(args)
+                .env(env)
+                .build();
+    }
+}
@@ -0,0 +1,179 @@
+package aldrinm.agent.mcp;
+
+import aldrinm.agent.cyver.CyverClientPool;
+import aldrinm.agent.metrics.AgentMetrics;
+import aldrinm.agent.recording.CallRecorder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.mcp.SyncMcpToolCallback;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves MCP tools once and hands out the cached callbacks. The cache is cleared whenever a server reports that
+ * its tools changed or a client reconnects, and the required tools are checked at startup. Calls go through the
+ * {@link CallRecorder}, and when replaying no MCP server is needed at all.
+ */
+@Component
+public class McpToolRegistry {
+
+    private final static Logger logger = LoggerFactory.getLogger(McpToolRegistry.class);
+
+    private final List<McpSyncClient> mcpSyncClients;
+    private final CyverClientPool cyverClientPool;
+    private final AgentMetrics metrics;
+    private final CallRecorder callRecorder;
+    /**
+     * The database the clients are bound to when it is not the default one
+     */
+    @Nullable
+    private final String database;
+    private final Map<String, ToolCallback> toolCallbacks = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    public McpToolRegistry(List<McpSyncClient> mcpSyncClients,
+                           CyverClientPool cyverClientPool,
+                           AgentMetrics metrics,
+                           CallRecorder callRecorder,
+                           @Value("${cypher.mcp.required-tools:mcp-neo4j-cypher/get_neo4j_schema,cyver/validate_cypher_syntax,cyver/schema_validator,cyver/validate_cypher_properties}")
+                           List<String> requiredTools) {
+        this(mcpSyncClients, cyverClientPool, metrics, callRecorder, (String) null);
+        if (!callRecorder.isReplaying()) {
+            resolveRequiredTools(requiredTools);
+        }
+    }
+
+    private McpToolRegistry(List<McpSyncClient> mcpSyncClients,
+                            CyverClientPool cyverClientPool,
+                            AgentMetrics metrics,
+                            CallRecorder callRecorder,
+                            @Nullable String database) {
+        this.mcpSyncClients = mcpSyncClients;
+        this.cyverClientPool = cyverClientPool;
+        this.metrics = metrics;
+        this.callRecorder = callRecorder;
+        this.database = database;
+    }
+
+    /**
+     * @return a registry of the given clients, all bound to the given database. Its calls are recorded apart from
+     * those of the other databases, which ask the same tools the same things.
+     */
+    public McpToolRegistry forDatabase(String database, List<McpSyncClient> mcpSyncClients, CyverClientPool cyverClientPool) {
+        return new McpToolRegistry(mcpSyncClients, cyverClientPool, metrics, callRecorder, database);
+    }
+
+    /**
+     * The mapper used to read tool results, shared since it is thread safe and costly to build
+     */
+    public ObjectMapper objectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * Finds an MCP tool by client name and tool name
+     * @return ToolCallback for the found tool
+     */
+    public ToolCallback findTool(String mcpClientName, String toolName) {
+        return toolCallbacks.computeIfAbsent(mcpClientName + "/" + toolName, key -> resolveTool(mcpClientName, toolName));
+    }
+
+    /**
+     * Calls the tool and returns the text of the first content item of its result
+     */
+    public String callForText(String mcpClientName, String toolName, Map<String, Object> arguments) {
+        try {
+            String input = objectMapper.writeValueAsString(arguments);
+            String recordedClientName = database != null ? mcpClientName + "@" + database : mcpClientName;
+            String result = callRecorder.tool(recordedClientName, toolName, input, () -> {
+                ToolCallback callback = findTool(mcpClientName, toolName);
+                return metrics.timeToolCall(mcpClientName, toolName, () -> callback.call(input));
+            });
+            List<Map<String, Object>> listResult = objectMapper.readValue(result, new TypeReference<List<Map<String, Object>>>() {});
+            // Assuming the first element of the list contains the actual data
+            if (!listResult.isEmpty()) {
+                return (String) listResult.get(0).get("text");
+            }
+        } catch (JsonProcessingException ex) {
+            throw new RuntimeException("Failed to parse result", ex);
+        }
+        throw new RuntimeException("Tool '" + toolName + "' of the " + mcpClientName + " client returned no content");
+    }
+
+    @EventListener
+    public void onToolsChanged(McpToolsChangedEvent event) {
+        logger.info("Tools of {} changed, clearing the cached tool callbacks", event.name());
+        toolCallbacks.clear();
+    }
+
+    private void resolveRequiredTools(List<String> requiredTools) {
+        List<String> missing = new ArrayList<>();
+        for (String requiredTool : requiredTools) {
+            if (requiredTool.isBlank()) {
+                continue;
+            }
+            String[] parts = requiredTool.trim().split("/", 2);
+            if (parts.length != 2) {
+                throw new IllegalStateException("Required tools must be given as <client>/<tool>, not '" + requiredTool + "'");
+            }
+            try {
+                findTool(parts[0], parts[1]);
+            } catch (RuntimeException ex) {
+                missing.add(requiredTool + " (" + ex.getMessage() + ")");
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Required MCP tools are not available: " + String.join(", ", missing));
+        }
+    }
+
+    private ToolCallback resolveTool(String mcpClientName, String toolName) {
+        //cyver tools are served by the pool rather than a single client
+        if (mcpClientName.equals(CyverClientPool.SERVER_NAME)) {
+            Optional<McpSchema.Tool> tool = cyverClientPool.withClient(client -> client.listTools().tools().stream()
+                    .filter(t -> t.name().equals(toolName))
+                    .findAny());
+            if (tool.isEmpty()) {
+                throw new RuntimeException("Could not find tool '" + toolName + "' in the " + mcpClientName + " client");
+            }
+            return cyverClientPool.toolCallback(tool.get());
+        }
+
+        Optional<McpSyncClient> mcpClient = mcpSyncClients.stream()
+                .filter(c -> c.getServerInfo().name().equals(mcpClientName))
+                .findAny();
+
+        if (mcpClient.isEmpty()) {
+            throw new RuntimeException("Could not find the " + mcpClientName + " client");
+        }
+
+        var client = mcpClient.get();
+        Optional<McpSchema.Tool> tool = client.listTools().tools().stream()
+                .filter(t -> t.name().equals(toolName))
+                .findAny();
+
+        if (tool.isEmpty()) {
+            throw new RuntimeException("Could not find tool '" + toolName + "' in the " + mcpClientName + " client");
+        }
+
+        return new SyncMcpToolCallback(client, tool.get());
+    }
+}
@@ -0,0 +1,24 @@
+package aldrinm.agent.mcp;
+
+import io.modelcontextprotocol.client.McpClient;
+import org.springframework.ai.mcp.customizer.McpSyncClientCustomizer;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns tools/list_changed notifications of the auto-configured clients into {@link McpToolsChangedEvent}s
+ */
+@Component
+class McpToolsChangeCustomizer implements McpSyncClientCustomizer {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    McpToolsChangeCustomizer(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public void customize(String name, McpClient.SyncSpec spec) {
+        spec.toolsChangeConsumer(tools -> eventPublisher.publishEvent(new McpToolsChangedEvent(name)));
+    }
+}
@@ -0,0 +1,7 @@
+package aldrinm.agent.mcp;
+
+/**
+ * Published when an MCP server announces that its tools changed, or when a client had to reconnect
+ */
+public record McpToolsChangedEvent(String name) {
+}
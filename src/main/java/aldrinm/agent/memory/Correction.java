@@ -0,0 +1,10 @@
+package aldrinm.agent.memory;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A cypher that failed validation for a question about a database, the feedback it got, and the cypher that
+ * eventually passed. The database is null for corrections remembered before they were kept per database.
+ */
+public record Correction(@Nullable String database, String question, String failedCypher, @Nullable String feedback, String fixedCypher) {
+}
@@ -0,0 +1,201 @@
+package aldrinm.agent.memory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Remembers how failing cypher was corrected, so that the corrections of similar questions can be shown to the LLM
+ * as examples. Only the corrections made against the same database are shown, as another database has other labels
+ * and properties. Corrections are appended to a memory-mapped file, each as its length followed by its JSON, and are
+ * found again through the MinHash signatures of their question and feedback. Without a file they are only kept for
+ * as long as the application runs.
+ */
+@Component
+public class CorrectionStore {
+
+    private final static Logger logger = LoggerFactory.getLogger(CorrectionStore.class);
+    private final static ObjectMapper objectMapper = new ObjectMapper();
+    private final static int INITIAL_CAPACITY = 1 << 20;
+
+    private record Entry(Correction correction, int[] questionSignature, int[] feedbackSignature) {
+    }
+
+    private final boolean enabled;
+    @Nullable
+    private final Path file;
+    private final int examples;
+    private final double minSimilarity;
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+    private final Set<String> known = ConcurrentHashMap.newKeySet();
+    @Nullable
+    private FileChannel channel;
+    @Nullable
+    private MappedByteBuffer buffer;
+    /**
+     * Where the next correction is written, the file beyond it is zero-filled
+     */
+    private int end;
+
+    public CorrectionStore(@Value("${cypher.corrections.enabled:true}") boolean enabled,
+                           @Value("${cypher.corrections.file:}") String file,
+                           @Value("${cypher.corrections.examples:3}") int examples,
+                           @Value("${cypher.corrections.min-similarity:0.25}") double minSimilarity) {
+        this.enabled = enabled;
+        this.file = file.isBlank() ? null : Path.of(file);
+        this.examples = examples;
+        this.minSimilarity = minSimilarity;
+        if (enabled) {
+            load();
+        }
+    }
+
+    public void record(Correction correction) {
+        if (!enabled || !known.add(key(correction))) {
+            return;
+        }
+        entries.add(entry(correction));
+        if (file != null) {
+            try {
+                append(objectMapper.writeValueAsBytes(correction));
+            } catch (IOException ex) {
+                logger.warn("Could not write the correction to {}", file, ex);
+            }
+        }
+    }
+
+    /**
+     * @param database the database the question is about
+     * @param feedback the feedback of the cypher being rectified, or null when generating the first one
+     * @return the corrections of the questions about the database, and feedback, most similar to these
+     */
+    public List<Correction> similar(String database, String question, @Nullable String feedback) {
+        if (!enabled || entries.isEmpty() || examples <= 0) {
+            return List.of();
+        }
+        int[] questionSignature = MinHash.signature(question);
+        int[] feedbackSignature = feedback != null ? MinHash.signature(feedback) : null;
+        record Scored(Correction correction, double similarity) {
+        }
+        return entries.stream()
+                .filter(entry -> database.equals(entry.correction().database()))
+                .map(entry -> {
+                    double similarity = MinHash.similarity(questionSignature, entry.questionSignature());
+                    if (feedbackSignature != null) {
+                        similarity = (similarity + MinHash.similarity(feedbackSignature, entry.feedbackSignature())) / 2;
+                    }
+                    return new Scored(entry.correction(), similarity);
+                })
+                .filter(scored -> scored.similarity() >= minSimilarity)
+                .sorted(Comparator.comparingDouble(Scored::similarity).reversed())
+                .limit(examples)
+                .map(Scored::correction)
+                .toList();
+    }
+
+    private static Entry entry(Correction correction) {
+        return new Entry(correction, MinHash.signature(correction.question()),
+                MinHash.signature(correction.feedback() != null ? correction.feedback() : ""));
+    }
+
+    private static String key(Correction correction) {
+        return correction.database() + "\n" + correction.failedCypher() + "\n" + correction.fixedCypher();
+    }
+
+    /**
+     * Writes the JSON before its length, so that a correction cut short by a crash reads as the end of the file
+     */
+    private synchronized void append(byte[] json) throws IOException {
+        MappedByteBuffer mapped = mapped((long) end + Integer.BYTES + json.length);
+        mapped.put(end + Integer.BYTES, json);
+        mapped.putInt(end, json.length);
+        end += Integer.BYTES + json.length;
+    }
+
+    /**
+     * @return the file mapped with room for at least this many bytes, growing it if needed
+     */
+    private MappedByteBuffer mapped(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The correction store is full");
+        }
+        if (channel == null) {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        if (buffer == null || buffer.capacity() < size) {
+            long capacity = Math.max(INITIAL_CAPACITY, buffer != null ? buffer.capacity() : channel.size());
+            while (capacity < size) {
+                capacity *= 2;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(capacity, Integer.MAX_VALUE));
+        }
+        return buffer;
+    }
+
+    private synchronized void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try {
+            MappedByteBuffer mapped = mapped(Files.size(file));
+            while (end + Integer.BYTES <= mapped.capacity()) {
+                int length = mapped.getInt(end);
+                if (length <= 0 || end + Integer.BYTES + length > mapped.capacity()) {
+                    break;
+                }
+                byte[] json = new byte[length];
+                mapped.get(end + Integer.BYTES, json);
+                try {
+                    Correction correction = objectMapper.readValue(json, Correction.class);
+                    if (known.add(key(correction))) {
+                        entries.add(entry(correction));
+                    }
+                } catch (JsonProcessingException ex) {
+                    //its length is intact, so the corrections after it can still be read
+                    logger.warn("Skipping an unreadable correction at {} of {}: {}", end, file, ex.getOriginalMessage());
+                }
+                end += Integer.BYTES + length;
+            }
+            logger.info("Loaded {} correction(s) from {}", entries.size(), file);
+        } catch (IOException ex) {
+            //whatever was read up to here is kept, and new corrections overwrite the unreadable one
+            logger.warn("Could not read all the corrections from {}, continuing with {}", file, entries.size(), ex);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (buffer != null) {
+                buffer.force();
+            }
+            channel.close();
+        } catch (IOException ex) {
+            logger.warn("Could not close the correction store {}", file, ex);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package aldrinm.agent.memory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * MinHash signatures over the words and word pairs of a text. The share of equal positions in two signatures
+ * estimates the Jaccard similarity of their word sets, without keeping the sets themselves around.
+ */
+final class MinHash {
+
+    private final static int SIZE = 64;
+    private final static long[] SEEDS = new long[SIZE];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < SIZE; i++) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    private MinHash() {
+    }
+
+    /**
+     * @return the signature of the text, or an empty one if it has no words
+     */
+    static int[] signature(String text) {
+        Set<String> shingles = shingles(text);
+        if (shingles.isEmpty()) {
+            return new int[0];
+        }
+        int[] signature = new int[SIZE];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (String shingle : shingles) {
+            long hash = shingle.hashCode();
+            for (int i = 0; i < SIZE; i++) {
+                int value = (int) (mix(hash ^ SEEDS[i]) >>> 33);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * @return the estimated Jaccard similarity of the texts, 0 if either has no words
+     */
+    static double similarity(int[] first, int[] second) {
+        if (first.length == 0 || second.length == 0) {
+            return 0;
+        }
+        int equal = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if (first[i] == second[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / SIZE;
+    }
+
+    /**
+     * Lower-cased words, with camelCase split up so that "numParts" and "num parts" match, and consecutive word pairs
+     */
+    static Set<String> shingles(String text) {
+        String[] words = text.replaceAll("([a-z0-9])([A-Z])", "$1 $2")
+                .toLowerCase(Locale.ROOT)
+                .split("[^a-z0-9]+");
+        Set<String> shingles = new HashSet<>();
+        String previous = null;
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            shingles.add(word);
+            if (previous != null) {
+                shingles.add(previous + " " + word);
+            }
+            previous = word;
+        }
+        return shingles;
+    }
+
+    private static long mix(long value) {
+        //the murmur3 finalizer
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,121 @@
+package aldrinm.agent.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * The Micrometer meters of the agent: a timer per action, per validator, per MCP tool call and for Neo4j execution,
+ * the number of rectify rounds per question, the repairs made without the LLM, the repeated, escalated and abandoned
+ * rectify rounds, and LLM token usage and cost per model.
+ */
+@Component
+public class AgentMetrics {
+
+    public final static String ACTION_TIMER = "cypher.agent.action";
+    public final static String VALIDATOR_TIMER = "cypher.agent.validator";
+    public final static String TOOL_CALL_TIMER = "cypher.agent.mcp.call";
+    public final static String EXECUTION_TIMER = "cypher.agent.neo4j.execution";
+    public final static String RECTIFY_ITERATIONS = "cypher.agent.rectify.iterations";
+    public final static String LLM_TOKENS = "cypher.agent.llm.tokens";
+    public final static String LLM_COST = "cypher.agent.llm.cost";
+    public final static String REPAIRS = "cypher.agent.repairs";
+    public final static String RECTIFY_LOOP = "cypher.agent.rectify.loop";
+
+    private final MeterRegistry meterRegistry;
+
+    public AgentMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Times an action until the returned timing is closed
+     */
+    public Timing timeAction(String action) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return () -> sample.stop(Timer.builder(ACTION_TIMER)
+                .description("Time taken by each agent action")
+                .tag("action", action)
+                .register(meterRegistry));
+    }
+
+    public void recordValidator(String validator, String outcome, Duration duration) {
+        Timer.builder(VALIDATOR_TIMER)
+                .description("Time taken by each validator, by outcome")
+                .tag("validator", validator)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(duration);
+    }
+
+    public <T> T timeToolCall(String client, String tool, Supplier<T> call) {
+        return timed(Timer.builder(TOOL_CALL_TIMER)
+                .description("Time taken by each MCP tool call")
+                .tag("client", client)
+                .tag("tool", tool), call);
+    }
+
+    public <T> T timeExecution(Supplier<T> execution) {
+        return timed(Timer.builder(EXECUTION_TIMER)
+                .description("Time taken to execute the cypher against Neo4j"), execution);
+    }
+
+    public void recordRectifyIterations(int iterations) {
+        DistributionSummary.builder(RECTIFY_ITERATIONS)
+                .description("Number of rectify rounds needed per question")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(iterations);
+    }
+
+    public void recordRepair(boolean passed) {
+        Counter.builder(REPAIRS)
+                .description("Cypher repaired without the LLM, by whether the repair passed validation")
+                .tag("outcome", passed ? "pass" : "fail")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * @param event repeat, escalate or abort
+     */
+    public void recordRectifyLoop(String event) {
+        Counter.builder(RECTIFY_LOOP)
+                .description("Cypher already tried that was returned again, and questions escalated or given up on")
+                .tag("event", event)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void recordLlmUsage(String model, long inputTokens, long outputTokens, double costUsd) {
+        Counter.builder(LLM_TOKENS).tag("model", model).tag("type", "input").register(meterRegistry).increment(inputTokens);
+        Counter.builder(LLM_TOKENS).tag("model", model).tag("type", "output").register(meterRegistry).increment(outputTokens);
+        Counter.builder(LLM_COST).description("LLM cost in USD").baseUnit("usd").tag("model", model)
+                .register(meterRegistry).increment(costUsd);
+    }
+
+    private <T> T timed(Timer.Builder timer, Supplier<T> work) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = work.get();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(timer.tag("outcome", outcome).register(meterRegistry));
+        }
+    }
+
+    /**
+     * A running timing, stopped by closing it
+     */
+    public interface Timing extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,31 @@
+package aldrinm.agent.progress;
+
+import aldrinm.agent.RunTracker;
+import com.embabel.agent.api.common.OperationContext;
+import com.embabel.agent.domain.io.UserInput;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes {@link AgentProgressEvent}s, so that a question can be followed while it is being answered rather than
+ * only once the answer is formatted
+ */
+@Component
+public class AgentProgress {
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final RunTracker runTracker;
+
+    public AgentProgress(ApplicationEventPublisher eventPublisher, RunTracker runTracker) {
+        this.eventPublisher = eventPublisher;
+        this.runTracker = runTracker;
+    }
+
+    public void publish(OperationContext context, UserInput userInput, AgentProgressEvent.Stage stage, @Nullable String detail) {
+        String processId = context.getProcessContext().getAgentProcess().getId();
+        RunTracker.Run run = runTracker.run(userInput);
+        eventPublisher.publishEvent(new AgentProgressEvent(processId, run != null ? run.id() : null,
+                userInput.getContent(), stage, detail));
+    }
+}
@@ -0,0 +1,26 @@
+package aldrinm.agent.progress;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Published as a question makes its way through the agent, and for every chunk of a streamed answer
+ *
+ * @param processId the agent process answering the question
+ * @param runId     the {@link aldrinm.agent.RunTracker.Run} of the question, if it is being tracked
+ * @param detail    the cypher, the outcome or the chunk of the answer, depending on the stage
+ */
+public record AgentProgressEvent(@Nullable String processId, @Nullable String runId, String question, Stage stage,
+                                 @Nullable String detail) {
+
+    public enum Stage {
+        GENERATED,
+        VALIDATING,
+        VALIDATED,
+        RECTIFYING,
+        EXECUTING,
+        EXECUTED,
+        FORMATTING,
+        ANSWER_CHUNK,
+        ANSWERED
+    }
+}
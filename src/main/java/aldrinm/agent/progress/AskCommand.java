@@ -0,0 +1,91 @@
+package aldrinm.agent.progress;
+
+import aldrinm.agent.FormattedResponse;
+import aldrinm.agent.RunTracker;
+import com.embabel.agent.api.common.autonomy.AgentInvocation;
+import com.embabel.agent.core.AgentPlatform;
+import com.embabel.agent.domain.io.UserInput;
+import org.jline.terminal.Terminal;
+import org.springframework.context.event.EventListener;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Answers a question in the shell, printing each step as it completes and the answer as it is streamed, rather than
+ * nothing at all until the answer is complete
+ */
+@ShellComponent
+public class AskCommand {
+
+    private final AgentPlatform agentPlatform;
+    private final RunTracker runTracker;
+    private final Terminal terminal;
+    /**
+     * Whether some of the answer has been printed already, by the run of each question being asked here
+     */
+    private final Map<String, AtomicBoolean> streamedByRun = new ConcurrentHashMap<>();
+
+    public AskCommand(AgentPlatform agentPlatform, RunTracker runTracker, Terminal terminal) {
+        this.agentPlatform = agentPlatform;
+        this.runTracker = runTracker;
+        this.terminal = terminal;
+    }
+
+    @ShellMethod(key = "ask", value = "Answers a question, showing its progress along the way")
+    public String ask(@ShellOption(help = "The question") String question) {
+        UserInput userInput = new UserInput(question);
+        //only the events of this run are printed, not those of the same question asked elsewhere
+        RunTracker.Run run = runTracker.track(userInput);
+        AtomicBoolean streamed = new AtomicBoolean();
+        streamedByRun.put(run.id(), streamed);
+        try {
+            FormattedResponse response = AgentInvocation.create(agentPlatform, FormattedResponse.class)
+                    .invoke(userInput);
+            //a streamed answer is on the terminal already, only the line needs ending
+            return streamed.get() ? "" : response.response();
+        } finally {
+            streamedByRun.remove(run.id());
+            runTracker.release(userInput);
+        }
+    }
+
+    @EventListener
+    public void onProgress(AgentProgressEvent event) {
+        AtomicBoolean streamed = event.runId() != null ? streamedByRun.get(event.runId()) : null;
+        if (streamed == null) {
+            return;
+        }
+        PrintWriter writer = terminal.writer();
+        switch (event.stage()) {
+            case ANSWER_CHUNK -> {
+                streamed.set(true);
+                writer.print(event.detail());
+            }
+            case ANSWERED -> {
+                //printed by the command once the agent returns
+            }
+            case VALIDATED, RECTIFYING, EXECUTED -> writer.println("> " + label(event.stage()) + " " + event.detail());
+            default -> writer.println("> " + label(event.stage()) + (event.detail() != null ? ": " + event.detail() : ""));
+        }
+        writer.flush();
+    }
+
+    private static String label(AgentProgressEvent.Stage stage) {
+        return switch (stage) {
+            case GENERATED -> "Generated";
+            case VALIDATING -> "Validating";
+            case VALIDATED -> "Cypher is";
+            case RECTIFYING -> "Rectifying";
+            case EXECUTING -> "Executing";
+            case EXECUTED -> "Got";
+            case FORMATTING -> "Formatting the answer";
+            case ANSWER_CHUNK, ANSWERED -> "";
+        };
+    }
+}
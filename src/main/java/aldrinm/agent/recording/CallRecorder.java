@@ -0,0 +1,236 @@
+package aldrinm.agent.recording;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.annotation.PreDestroy;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Records LLM and MCP tool calls, and replays them without the LLM or the MCP servers. Calls are keyed by a hash of
+ * what they were asked, so a replay only answers exactly the same prompts and tool arguments; anything else fails
+ * rather than reaching a live service. The calls are appended to {@code calls.jsonl}, one JSON line each, and
+ * {@code calls.idx} holds the offset and length of every line by key, so a replay reads only the lines it needs.
+ * The first recording of a key is kept. Replayed calls can be slowed down to simulate the latency of the real ones.
+ */
+@Component
+public class CallRecorder {
+
+    private final static Logger logger = LoggerFactory.getLogger(CallRecorder.class);
+
+    public enum Mode {
+        OFF,
+        RECORD,
+        REPLAY
+    }
+
+    public final static String LLM = "llm";
+    public final static String TOOL = "tool";
+
+    record Recording(String kind, String key, String request, JsonNode response) {
+    }
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+    private final Mode mode;
+    private final Path directory;
+    private final Duration llmLatency;
+    private final Duration toolLatency;
+    /**
+     * Offset and length in calls.jsonl of every recorded call, by key
+     */
+    private final Map<String, long[]> index = new ConcurrentHashMap<>();
+    @Nullable
+    private FileChannel calls;
+    @Nullable
+    private FileChannel indexFile;
+
+    public CallRecorder(@Value("${cypher.recording.mode:off}") String mode,
+                        @Value("${cypher.recording.directory:recordings}") String directory,
+                        @Value("${cypher.recording.replay.llm-latency:0ms}") Duration llmLatency,
+                        @Value("${cypher.recording.replay.tool-latency:0ms}") Duration toolLatency) {
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.directory = Path.of(directory);
+        this.llmLatency = llmLatency;
+        this.toolLatency = toolLatency;
+        if (this.mode != Mode.OFF) {
+            open();
+        }
+    }
+
+    public boolean isReplaying() {
+        return mode == Mode.REPLAY;
+    }
+
+    /**
+     * @param operation what is asked of the LLM, and with which options if they matter
+     */
+    public <T> T llm(String operation, String prompt, Class<T> type, Supplier<T> call) {
+        return recordOrReplay(LLM, operation + "\n" + prompt, type, llmLatency, call);
+    }
+
+    public String tool(String client, String tool, String input, Supplier<String> call) {
+        return recordOrReplay(TOOL, client + "/" + tool + "\n" + input, String.class, toolLatency, call);
+    }
+
+    private <T> T recordOrReplay(String kind, String request, Class<T> type, Duration latency, Supplier<T> call) {
+        if (mode == Mode.OFF) {
+            return call.get();
+        }
+        String key = key(kind, request);
+        if (mode == Mode.REPLAY) {
+            return replay(kind, key, request, type, latency);
+        }
+        T response = call.get();
+        if (!index.containsKey(key)) {
+            append(new Recording(kind, key, request, objectMapper.valueToTree(response)));
+        }
+        return response;
+    }
+
+    private <T> T replay(String kind, String key, String request, Class<T> type, Duration latency) {
+        long[] location = index.get(key);
+        if (location == null) {
+            throw new RuntimeException("No recording of this " + kind + " call in " + directory + ": "
+                    + abbreviate(request));
+        }
+        sleep(latency);
+        try {
+            ByteBuffer line = ByteBuffer.allocate((int) location[1]);
+            //positional reads don't move the channel, so concurrent replays don't get in each other's way
+            while (line.hasRemaining()) {
+                if (calls.read(line, location[0] + line.position()) < 0) {
+                    throw new IOException("The recording of " + key + " is cut short");
+                }
+            }
+            Recording recording = objectMapper.readValue(line.array(), Recording.class);
+            return objectMapper.treeToValue(recording.response(), type);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not read the recording of " + key, ex);
+        }
+    }
+
+    private synchronized void append(Recording recording) {
+        if (index.containsKey(recording.key())) {
+            return;
+        }
+        try {
+            byte[] line = (objectMapper.writeValueAsString(recording) + "\n").getBytes(StandardCharsets.UTF_8);
+            long offset = calls.size();
+            write(calls, line, offset);
+            write(indexFile, (recording.key() + " " + offset + " " + line.length + "\n").getBytes(StandardCharsets.UTF_8), indexFile.size());
+            index.put(recording.key(), new long[]{offset, line.length});
+        } catch (IOException ex) {
+            logger.warn("Could not record the {} call {}", recording.kind(), recording.key(), ex);
+        }
+    }
+
+    private static void write(FileChannel channel, byte[] bytes, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private void open() {
+        try {
+            Files.createDirectories(directory);
+            Path callsPath = directory.resolve("calls.jsonl");
+            Path indexPath = directory.resolve("calls.idx");
+            calls = FileChannel.open(callsPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            indexFile = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            loadIndex(indexPath, calls.size());
+            logger.info("{} calls, {} recorded in {}", mode == Mode.REPLAY ? "Replaying" : "Recording", index.size(), directory);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not open the recordings in " + directory, ex);
+        }
+    }
+
+    private void loadIndex(Path indexPath, long callsSize) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts.length != 3) {
+                    //the last line is cut short when a recording was killed mid-write
+                    continue;
+                }
+                long offset = Long.parseLong(parts[1]);
+                long length = Long.parseLong(parts[2]);
+                if (offset + length <= callsSize) {
+                    index.putIfAbsent(parts[0], new long[]{offset, length});
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a SHA-256 of the call, shortened to 128 bits, which is plenty to tell calls apart
+     */
+    static String key(String kind, String request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(kind.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            byte[] hash = digest.digest(request.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String abbreviate(String request) {
+        String line = request.replaceAll("\\s+", " ");
+        return line.length() > 200 ? line.substring(0, 200) + "..." : line;
+    }
+
+    private static void sleep(Duration latency) {
+        if (latency.isZero() || latency.isNegative()) {
+            return;
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while replaying a call", ex);
+        }
+    }
+
+    @PreDestroy
+    synchronized void close() {
+        try {
+            if (calls != null) {
+                calls.close();
+            }
+            if (indexFile != null) {
+                indexFile.close();
+            }
+        } catch (IOException ex) {
+            logger.warn("Could not close the recordings in {}", directory, ex);
+        }
+    }
+}
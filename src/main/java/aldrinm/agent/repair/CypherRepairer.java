@@ -0,0 +1,540 @@
+package aldrinm.agent.repair;
+
+import aldrinm.agent.ValidationReport;
+import aldrinm.agent.cyver.CyverSyntaxValidatonResult;
+import aldrinm.agent.schema.SchemaCache;
+import aldrinm.agent.schema.SchemaIndex;
+import aldrinm.agent.validation.CypherValidationPipeline;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Repairs the trivial mistakes that make cypher fail the schema and properties validators - a label, relationship
+ * type or property that is misspelled or in the wrong case, or a relationship drawn against the direction of the
+ * schema - without asking the LLM. Only the names the validators reported are touched: those the schema doesn't know
+ * are matched to the closest known name by case folding and edit distance, and only when the match is unambiguous.
+ * Anything it can't repair is left to the LLM.
+ */
+@Component
+public class CypherRepairer {
+
+    public record Repair(String cypher, List<String> changes) {
+    }
+
+    private final static Set<String> KEYWORDS_BEFORE_PATTERNS = Set.of(
+            "MATCH", "MERGE", "CREATE", "WHERE", "AND", "OR", "XOR", "NOT", "WITH", "RETURN", "UNWIND", "DELETE",
+            "DETACH", "SET", "IN", "EXISTS", "CASE", "WHEN", "THEN", "ELSE", "OPTIONAL", "YIELD");
+
+    //names as the validators write them: `Name`, 'Name', :Name in a pattern, or after the kind of name, as in
+    //"Label Minifigs does not exist" or "the missing property name is: numParts"
+    private final static Pattern REPORTED_NAME = Pattern.compile(
+            "`([^`]+)`|'([^']+)'|\"([^\"]+)\"|:\\s*([A-Za-z_][A-Za-z0-9_]*)"
+                    + "|(?i:label|property|key|type)\\s+(?!(?i:name)\\b)([A-Za-z_][A-Za-z0-9_]*)");
+
+    private final SchemaCache schemaCache;
+    private final boolean enabled;
+
+    public CypherRepairer(SchemaCache schemaCache,
+                          @Value("${cypher.repair.enabled:true}") boolean enabled) {
+        this.schemaCache = schemaCache;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return a repairer that matches names against the schema of another database
+     */
+    public CypherRepairer forDatabase(SchemaCache schemaCache) {
+        return new CypherRepairer(schemaCache, enabled);
+    }
+
+    /**
+     * @return the repaired cypher, or empty if repair is disabled, the failure is not one it can repair, or nothing
+     * needed changing
+     */
+    public Optional<Repair> repair(String cypher, ValidationReport validationReport) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        return repair(cypher, validationReport, schemaCache.get().index());
+    }
+
+    static Optional<Repair> repair(String cypher, ValidationReport validationReport, SchemaIndex index) {
+        //syntax errors are left to the LLM, there is nothing reliable to match against the schema
+        if (index.isEmpty() || !failsOnSchema(validationReport)) {
+            return Optional.empty();
+        }
+        Set<String> reported = reportedNames(validationReport);
+        if (reported.isEmpty()) {
+            return Optional.empty();
+        }
+        return new Repairing(cypher, index, reported).repair();
+    }
+
+    /**
+     * @return the names mentioned in what the schema and properties validators reported
+     */
+    static Set<String> reportedNames(ValidationReport validationReport) {
+        Set<String> names = new HashSet<>();
+        for (CyverSyntaxValidatonResult result : Arrays.asList(validationReport.schemaResult(), validationReport.propertiesResult())) {
+            if (result == null || result.metadata() == null) {
+                continue;
+            }
+            for (Map<String, Object> metadata : result.metadata()) {
+                for (Object value : metadata.values()) {
+                    if (!(value instanceof String text)) {
+                        continue;
+                    }
+                    if (text.strip().matches("[A-Za-z_][A-Za-z0-9_]*")) {
+                        names.add(text.strip());
+                    }
+                    Matcher matcher = REPORTED_NAME.matcher(text);
+                    while (matcher.find()) {
+                        for (int group = 1; group <= matcher.groupCount(); group++) {
+                            if (matcher.group(group) != null) {
+                                names.add(matcher.group(group));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    private static boolean failsOnSchema(ValidationReport validationReport) {
+        if (validationReport.syntaxResult() != null && !Boolean.TRUE.equals(validationReport.syntaxResult().isValid())) {
+            return false;
+        }
+        return (validationReport.schemaResult() != null && !CypherValidationPipeline.passes(validationReport.schemaResult()))
+                || (validationReport.propertiesResult() != null && !CypherValidationPipeline.passes(validationReport.propertiesResult()));
+    }
+
+    /**
+     * @return the candidate matching the name once case and underscores are ignored, else the one closest by edit
+     * distance if it is close enough and there is no tie
+     */
+    @Nullable
+    static String closest(String name, Collection<String> candidates) {
+        String folded = fold(name);
+        List<String> sameFolded = candidates.stream().filter(c -> fold(c).equals(folded)).toList();
+        if (sameFolded.size() == 1) {
+            return sameFolded.get(0);
+        }
+        int maxDistance = name.length() <= 4 ? 1 : 2;
+        String best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        boolean tie = false;
+        for (String candidate : candidates) {
+            int distance = distance(name.toLowerCase(Locale.ROOT), candidate.toLowerCase(Locale.ROOT));
+            if (distance < bestDistance) {
+                best = candidate;
+                bestDistance = distance;
+                tie = false;
+            } else if (distance == bestDistance) {
+                tie = true;
+            }
+        }
+        return best != null && !tie && bestDistance <= maxDistance ? best : null;
+    }
+
+    private static String fold(String name) {
+        return name.replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Edit distance counting a swap of two adjacent characters as one edit, as in "nmae" for "name"
+     */
+    static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(d[i - 1][j - 1] + cost, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    private enum TokenType { IDENTIFIER, SYMBOL, OTHER }
+
+    private record Token(TokenType type, String text, int start, int end) {
+        boolean is(char symbol) {
+            return type == TokenType.SYMBOL && text.charAt(0) == symbol;
+        }
+    }
+
+    private enum ScopeType { NODE, RELATIONSHIP, MAP, OTHER }
+
+    /**
+     * A bracketed part of the query; node and relationship patterns collect their variable and names, maps the keys
+     * of their owning pattern
+     */
+    private static final class Scope {
+        final ScopeType type;
+        final int open;
+        @Nullable final Scope owner;
+        @Nullable Integer variable;
+        final List<Integer> names = new ArrayList<>();
+        final List<Integer> keys = new ArrayList<>();
+        int close = -1;
+        @Nullable Scope left;
+        @Nullable Scope right;
+        boolean pointsLeft;
+        boolean pointsRight;
+
+        Scope(ScopeType type, int open, @Nullable Scope owner) {
+            this.type = type;
+            this.open = open;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * One repair of one query
+     */
+    private static final class Repairing {
+        private final String cypher;
+        private final List<Token> tokens;
+        private final Map<String, List<String>> labelProperties = new HashMap<>();
+        private final Map<String, List<String>> typeProperties = new HashMap<>();
+        private final Set<String> allProperties = new HashSet<>();
+        private final Set<SchemaIndex.RelationshipPattern> patterns;
+        private final List<Scope> nodes = new ArrayList<>();
+        private final List<Scope> relationships = new ArrayList<>();
+        //label predicates outside of patterns, as in WHERE n:Label, by variable token
+        private final Map<Integer, Integer> predicateLabels = new LinkedHashMap<>();
+        private final Map<Integer, String> replacements = new TreeMap<>();
+        private final List<String> changes = new ArrayList<>();
+        //the names the validators complained about, nothing else is rewritten
+        private final Set<String> reported;
+
+        Repairing(String cypher, SchemaIndex index, Set<String> reported) {
+            this.cypher = cypher;
+            this.reported = reported;
+            this.tokens = tokenize(cypher);
+            index.labels().forEach(l -> labelProperties.put(l.name(), l.properties().stream().map(SchemaIndex.Property::name).toList()));
+            index.relationshipTypes().forEach(t -> typeProperties.put(t.name(), t.properties().stream().map(SchemaIndex.Property::name).toList()));
+            labelProperties.values().forEach(allProperties::addAll);
+            typeProperties.values().forEach(allProperties::addAll);
+            this.patterns = new HashSet<>(index.patterns());
+        }
+
+        Optional<Repair> repair() {
+            parse();
+            Map<String, Set<String>> bindings = new HashMap<>();
+            for (Scope node : nodes) {
+                Set<String> labels = repairNames(node.names, labelProperties.keySet(), "label");
+                bind(bindings, node.variable, labels);
+                repairKeys(node.keys, labels, labelProperties);
+            }
+            predicateLabels.forEach((variable, label) -> bind(bindings, variable, repairNames(List.of(label), labelProperties.keySet(), "label")));
+            for (Scope relationship : relationships) {
+                Set<String> types = repairNames(relationship.names, typeProperties.keySet(), "relationship type");
+                bind(bindings, relationship.variable, types);
+                repairKeys(relationship.keys, types, typeProperties);
+            }
+            repairPropertyAccess(bindings);
+            repairDirections();
+
+            if (replacements.isEmpty()) {
+                return Optional.empty();
+            }
+            StringBuilder repaired = new StringBuilder(cypher);
+            List<Integer> positions = new ArrayList<>(replacements.keySet());
+            Collections.reverse(positions);
+            for (int position : positions) {
+                Token token = tokens.get(position);
+                repaired.replace(token.start(), token.end(), replacements.get(position));
+            }
+            return Optional.of(new Repair(repaired.toString(), List.copyOf(changes)));
+        }
+
+        /**
+         * Finds the node and relationship patterns, their names and property keys, and how they are chained
+         */
+        private void parse() {
+            Deque<Scope> open = new ArrayDeque<>();
+            Scope lastNode = null;
+            Scope pendingRelationship = null;
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                Scope current = open.peek();
+                if (token.is('(')) {
+                    Scope scope = new Scope(startsNode(i) ? ScopeType.NODE : ScopeType.OTHER, i, current);
+                    if (scope.type == ScopeType.NODE && pendingRelationship != null && pendingRelationship.close + (pendingRelationship.pointsRight ? 3 : 2) == i) {
+                        pendingRelationship.right = scope;
+                    }
+                    open.push(scope);
+                } else if (token.is('[')) {
+                    boolean relationship = i > 0 && tokens.get(i - 1).is('-');
+                    Scope scope = new Scope(relationship ? ScopeType.RELATIONSHIP : ScopeType.OTHER, i, current);
+                    if (relationship) {
+                        scope.pointsLeft = i > 1 && tokens.get(i - 2).is('<');
+                        int nodeClose = i - (scope.pointsLeft ? 3 : 2);
+                        if (lastNode != null && lastNode.close == nodeClose) {
+                            scope.left = lastNode;
+                        }
+                    }
+                    open.push(scope);
+                } else if (token.is('{')) {
+                    open.push(new Scope(ScopeType.MAP, i, current));
+                } else if ((token.is(')') || token.is(']') || token.is('}')) && current != null) {
+                    open.pop();
+                    current.close = i;
+                    if (current.type == ScopeType.NODE) {
+                        nodes.add(current);
+                        lastNode = current;
+                    } else if (current.type == ScopeType.RELATIONSHIP) {
+                        current.pointsRight = i + 2 < tokens.size() && tokens.get(i + 1).is('-') && tokens.get(i + 2).is('>');
+                        relationships.add(current);
+                        pendingRelationship = current;
+                    }
+                } else if (token.type() == TokenType.IDENTIFIER) {
+                    identifier(i, current);
+                }
+            }
+        }
+
+        private void identifier(int i, @Nullable Scope current) {
+            Token previous = i > 0 ? tokens.get(i - 1) : null;
+            Token next = i + 1 < tokens.size() ? tokens.get(i + 1) : null;
+            if (current != null && (current.type == ScopeType.NODE || current.type == ScopeType.RELATIONSHIP)) {
+                if (previous != null && previous.is(current.type == ScopeType.NODE ? '(' : '[')) {
+                    current.variable = i;
+                } else if (previous != null && (previous.is(':') || ((previous.is('|') || previous.is('&')) && !current.names.isEmpty()))) {
+                    current.names.add(i);
+                }
+                return;
+            }
+            if (current != null && current.type == ScopeType.MAP && previous != null && (previous.is('{') || previous.is(','))
+                    && next != null && next.is(':')) {
+                if (current.owner != null && current.owner.close < 0
+                        && (current.owner.type == ScopeType.NODE || current.owner.type == ScopeType.RELATIONSHIP)) {
+                    current.owner.keys.add(i);
+                }
+                return;
+            }
+            //a label predicate such as WHERE n:Label, as opposed to a map entry such as {key: value}
+            boolean mapValue = current != null && current.type == ScopeType.MAP && i > 2 && (tokens.get(i - 3).is('{') || tokens.get(i - 3).is(','));
+            if (previous != null && previous.is(':') && !mapValue && i > 1 && tokens.get(i - 2).type() == TokenType.IDENTIFIER) {
+                predicateLabels.put(i - 2, i);
+            }
+        }
+
+        /**
+         * A bracket opens a node pattern unless it is the argument list of a function call
+         */
+        private boolean startsNode(int i) {
+            if (i == 0) {
+                return true;
+            }
+            Token previous = tokens.get(i - 1);
+            return previous.type() != TokenType.IDENTIFIER
+                    || KEYWORDS_BEFORE_PATTERNS.contains(previous.text().toUpperCase(Locale.ROOT));
+        }
+
+        /**
+         * @return the names after repair, leaving out those that could not be matched to the schema
+         */
+        private Set<String> repairNames(List<Integer> positions, Set<String> known, String kind) {
+            Set<String> names = new LinkedHashSet<>();
+            for (int position : positions) {
+                String name = tokens.get(position).text();
+                if (known.contains(name)) {
+                    names.add(name);
+                    continue;
+                }
+                if (!reported.contains(name)) {
+                    continue;
+                }
+                String match = closest(name, known);
+                if (match != null) {
+                    replace(position, quoted(match), kind + " " + name + " -> " + match);
+                    names.add(match);
+                }
+            }
+            return names;
+        }
+
+        private void repairKeys(List<Integer> positions, Set<String> owners, Map<String, List<String>> properties) {
+            for (int position : positions) {
+                repairProperty(position, candidates(owners, properties));
+            }
+        }
+
+        private void repairPropertyAccess(Map<String, Set<String>> bindings) {
+            Map<String, List<String>> properties = new HashMap<>(labelProperties);
+            properties.putAll(typeProperties);
+            for (int i = 0; i + 2 < tokens.size(); i++) {
+                Token variable = tokens.get(i);
+                if (variable.type() != TokenType.IDENTIFIER || !tokens.get(i + 1).is('.')
+                        || tokens.get(i + 2).type() != TokenType.IDENTIFIER || (i > 0 && tokens.get(i - 1).is('.'))) {
+                    continue;
+                }
+                Set<String> owners = bindings.get(variable.text());
+                if (owners == null) {
+                    continue;
+                }
+                repairProperty(i + 2, candidates(owners, properties));
+            }
+        }
+
+        private Collection<String> candidates(Set<String> owners, Map<String, List<String>> properties) {
+            Set<String> candidates = new HashSet<>();
+            owners.forEach(owner -> candidates.addAll(properties.getOrDefault(owner, List.of())));
+            //without a known label any property of the schema will do
+            return candidates.isEmpty() ? allProperties : candidates;
+        }
+
+        private void repairProperty(int position, Collection<String> candidates) {
+            String name = tokens.get(position).text();
+            if (candidates.contains(name) || !reported.contains(name)) {
+                return;
+            }
+            String match = closest(name, candidates);
+            if (match != null) {
+                replace(position, quoted(match), "property " + name + " -> " + match);
+            }
+        }
+
+        /**
+         * Flips relationships drawn against the direction of every matching pattern of the schema
+         */
+        private void repairDirections() {
+            for (Scope relationship : relationships) {
+                if (relationship.left == null || relationship.right == null || relationship.pointsLeft == relationship.pointsRight) {
+                    continue;
+                }
+                Scope from = relationship.pointsRight ? relationship.left : relationship.right;
+                Scope to = relationship.pointsRight ? relationship.right : relationship.left;
+                //only relationships the validators complained about
+                if (relationship.names.stream().noneMatch(name -> reported.contains(tokens.get(name).text()))) {
+                    continue;
+                }
+                Set<String> types = repairedNames(relationship.names);
+                Set<String> fromLabels = repairedNames(from.names);
+                Set<String> toLabels = repairedNames(to.names);
+                if (types.isEmpty() || fromLabels.isEmpty() || toLabels.isEmpty()
+                        || anyPattern(fromLabels, types, toLabels) || !anyPattern(toLabels, types, fromLabels)) {
+                    continue;
+                }
+                if (relationship.pointsRight) {
+                    replace(relationship.open - 1, "<-", null);
+                    replace(relationship.close + 2, "", null);
+                } else {
+                    replace(relationship.open - 2, "", null);
+                    replace(relationship.close + 1, "->", null);
+                }
+                changes.add("direction of " + String.join("|", types) + " between " + String.join(":", fromLabels)
+                        + " and " + String.join(":", toLabels) + " reversed");
+            }
+        }
+
+        private Set<String> repairedNames(List<Integer> positions) {
+            Set<String> names = new LinkedHashSet<>();
+            for (int position : positions) {
+                String replacement = replacements.get(position);
+                names.add(replacement != null ? unquoted(replacement) : tokens.get(position).text());
+            }
+            return names;
+        }
+
+        private boolean anyPattern(Set<String> startLabels, Set<String> types, Set<String> endLabels) {
+            for (String start : startLabels) {
+                for (String type : types) {
+                    for (String end : endLabels) {
+                        if (patterns.contains(new SchemaIndex.RelationshipPattern(start, type, end))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private void replace(int position, String replacement, @Nullable String change) {
+            replacements.put(position, replacement);
+            if (change != null) {
+                changes.add(change);
+            }
+        }
+
+        private void bind(Map<String, Set<String>> bindings, @Nullable Integer variable, Set<String> names) {
+            if (variable != null && !names.isEmpty()) {
+                bindings.computeIfAbsent(tokens.get(variable).text(), v -> new LinkedHashSet<>()).addAll(names);
+            }
+        }
+    }
+
+    private static String quoted(String name) {
+        return name.matches("[A-Za-z_][A-Za-z0-9_]*") ? name : "`" + name.replace("`", "``") + "`";
+    }
+
+    private static String unquoted(String name) {
+        return name.startsWith("`") ? name.substring(1, name.length() - 1).replace("``", "`") : name;
+    }
+
+    /**
+     * Splits the query into identifiers (unquoted), single character symbols and everything else, dropping comments
+     */
+    private static List<Token> tokenize(String cypher) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int length = cypher.length();
+        while (i < length) {
+            char c = cypher.charAt(i);
+            if (c == '`') {
+                int end = cypher.indexOf('`', i + 1);
+                end = end < 0 ? length - 1 : end;
+                tokens.add(new Token(TokenType.IDENTIFIER, cypher.substring(i + 1, end), i, end + 1));
+                i = end + 1;
+            } else if (c == '\'' || c == '"') {
+                int end = i + 1;
+                while (end < length && cypher.charAt(end) != c) {
+                    end += cypher.charAt(end) == '\\' ? 2 : 1;
+                }
+                end = Math.min(end + 1, length);
+                tokens.add(new Token(TokenType.OTHER, cypher.substring(i, end), i, end));
+                i = end;
+            } else if (c == '/' && i + 1 < length && cypher.charAt(i + 1) == '/') {
+                int end = cypher.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '/' && i + 1 < length && cypher.charAt(i + 1) == '*') {
+                int end = cypher.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(cypher.charAt(i)) || cypher.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.IDENTIFIER, cypher.substring(start, i), start, i));
+            } else if (Character.isDigit(c) || c == '$') {
+                int start = i++;
+                while (i < length && (Character.isLetterOrDigit(cypher.charAt(i)) || cypher.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.OTHER, cypher.substring(start, i), start, i));
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else {
+                tokens.add(new Token(TokenType.SYMBOL, String.valueOf(c), i, i + 1));
+                i++;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,212 @@
+package aldrinm.agent.schema;
+
+import aldrinm.agent.mcp.McpToolRegistry;
+import jakarta.annotation.PreDestroy;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Caches the database schema so that it is fetched from the mcp-neo4j-cypher server once and shared by every
+ * attempt of every session. The schema is reloaded in the background when the TTL expires, and dropped as soon as
+ * the label/relationship type/property key fingerprint of the database changes.
+ */
+@Component
+public class SchemaCache {
+
+    private final static Logger logger = LoggerFactory.getLogger(SchemaCache.class);
+
+    static final String FINGERPRINT_QUERY = """
+            CALL db.labels() YIELD label
+            WITH collect(label) AS labels
+            CALL db.relationshipTypes() YIELD relationshipType
+            WITH labels, collect(relationshipType) AS relationshipTypes
+            CALL db.propertyKeys() YIELD propertyKey
+            RETURN labels, relationshipTypes, collect(propertyKey) AS propertyKeys
+            """;
+
+    private final McpToolRegistry toolRegistry;
+    private final Neo4jClient neo4jClient;
+    private final Duration ttl;
+    private final Duration checkInterval;
+    private final boolean pruningEnabled;
+    private final int promptTokenBudget;
+
+    private final AtomicReference<SchemaSnapshot> current = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<SchemaSnapshot>> inFlight = new AtomicReference<>();
+    private final ScheduledExecutorService refreshExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "schema-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SchemaCache(McpToolRegistry toolRegistry,
+                       Neo4jClient neo4jClient,
+                       @Value("${cypher.schema.cache.ttl:10m}") Duration ttl,
+                       @Value("${cypher.schema.cache.check-interval:30s}") Duration checkInterval,
+                       @Value("${cypher.schema.pruning.enabled:true}") boolean pruningEnabled,
+                       @Value("${cypher.schema.pruning.token-budget:2000}") int promptTokenBudget) {
+        this.toolRegistry = toolRegistry;
+        this.neo4jClient = neo4jClient;
+        this.ttl = ttl;
+        this.checkInterval = checkInterval;
+        this.pruningEnabled = pruningEnabled;
+        this.promptTokenBudget = promptTokenBudget;
+        if (!checkInterval.isZero() && !checkInterval.isNegative()) {
+            refreshExecutor.scheduleWithFixedDelay(this::checkForChanges,
+                    checkInterval.toMillis(), checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return a cache with the same settings for the database the given tools and client are bound to; it must be
+     * shut down once no longer used
+     */
+    public SchemaCache forDatabase(McpToolRegistry toolRegistry, Neo4jClient neo4jClient) {
+        return new SchemaCache(toolRegistry, neo4jClient, ttl, checkInterval, pruningEnabled, promptTokenBudget);
+    }
+
+    /**
+     * @return the cached schema text, loading it on first use
+     */
+    public String schema() {
+        return get().schema();
+    }
+
+    /**
+     * @return the part of the schema relevant to the given texts, within the token budget, or the whole schema text
+     * when pruning is disabled or the schema could not be indexed
+     */
+    public String schemaFor(String... relevantTexts) {
+        SchemaSnapshot snapshot = get();
+        if (!pruningEnabled || snapshot.index().isEmpty()) {
+            return snapshot.schema();
+        }
+        return snapshot.index().render(promptTokenBudget, relevantTexts);
+    }
+
+    /**
+     * Returns the current snapshot. Only the very first caller (or the first caller after an invalidation) waits for
+     * the load; an expired snapshot is still served while a fresh one is fetched in the background.
+     */
+    public SchemaSnapshot get() {
+        SchemaSnapshot snapshot = current.get();
+        if (snapshot == null) {
+            try {
+                return load().join();
+            } catch (CompletionException ex) {
+                throw new RuntimeException("Could not get the schema", ex.getCause());
+            }
+        }
+        if (isExpired(snapshot)) {
+            load();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops the cached schema and starts loading a fresh copy
+     */
+    public void invalidate() {
+        current.set(null);
+        load();
+    }
+
+    private boolean isExpired(SchemaSnapshot snapshot) {
+        return snapshot.loadedAt().plus(ttl).isBefore(Instant.now());
+    }
+
+    /**
+     * Starts a load unless one is already running, in which case callers share the running one
+     */
+    private CompletableFuture<SchemaSnapshot> load() {
+        while (true) {
+            CompletableFuture<SchemaSnapshot> existing = inFlight.get();
+            if (existing != null) {
+                return existing;
+            }
+            CompletableFuture<SchemaSnapshot> future = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, future)) {
+                refreshExecutor.execute(() -> {
+                    try {
+                        String fingerprint = fingerprint();
+                        String schema = fetchSchema();
+                        SchemaIndex index = SchemaIndex.parse(schema, toolRegistry.objectMapper());
+                        SchemaSnapshot snapshot = new SchemaSnapshot(schema, index, fingerprint, Instant.now());
+                        current.set(snapshot);
+                        logger.info("Loaded schema with fingerprint {}", fingerprint);
+                        future.complete(snapshot);
+                    } catch (Throwable ex) {
+                        logger.warn("Failed to load the schema", ex);
+                        future.completeExceptionally(ex);
+                    } finally {
+                        inFlight.compareAndSet(future, null);
+                    }
+                });
+                return future;
+            }
+        }
+    }
+
+    private void checkForChanges() {
+        SchemaSnapshot snapshot = current.get();
+        if (snapshot == null) {
+            return;
+        }
+        String fingerprint = fingerprint();
+        if (fingerprint != null && !fingerprint.equals(snapshot.fingerprint())) {
+            logger.info("Schema fingerprint changed from {} to {}, invalidating the schema cache", snapshot.fingerprint(), fingerprint);
+            invalidate();
+        } else if (isExpired(snapshot)) {
+            load();
+        }
+    }
+
+    /**
+     * Hashes the labels, relationship types and property keys of the database. This is much cheaper than
+     * introspecting the whole schema, so it can be polled.
+     * @return the fingerprint, or null if it could not be determined
+     */
+    @Nullable
+    String fingerprint() {
+        try {
+            Optional<Map<String, Object>> row = neo4jClient.query(FINGERPRINT_QUERY).fetch().one();
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String key : List.of("labels", "relationshipTypes", "propertyKeys")) {
+                List<String> names = new ArrayList<>();
+                row.map(r -> r.get(key))
+                        .filter(Collection.class::isInstance)
+                        .ifPresent(values -> ((Collection<?>) values).forEach(v -> names.add(String.valueOf(v))));
+                Collections.sort(names);
+                digest.update((key + "=" + String.join(",", names) + ";").getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        } catch (RuntimeException ex) {
+            logger.warn("Could not compute the schema fingerprint: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    private String fetchSchema() {
+        return toolRegistry.callForText("mcp-neo4j-cypher", "get_neo4j_schema", Map.of());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+}
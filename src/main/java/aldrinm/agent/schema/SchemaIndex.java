@@ -0,0 +1,288 @@
+package aldrinm.agent.schema;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * The labels, relationship types, properties and relationship patterns of the get_neo4j_schema output. Used to send
+ * the LLM only the part of the schema that is relevant to the question at hand.
+ */
+public final class SchemaIndex {
+
+    private final static Logger logger = LoggerFactory.getLogger(SchemaIndex.class);
+    private final static SchemaIndex EMPTY = new SchemaIndex(Map.of(), Map.of(), List.of());
+    //a single property sharing a word with the question (e.g. "name") is not enough to make a label relevant, each
+    //property counts for 1 while a match on the name of the label or type counts for at least 3
+    private final static int RELEVANCE_THRESHOLD = 2;
+
+    public record Property(String name, String type) {
+    }
+
+    public record NodeLabel(String name, List<Property> properties) {
+    }
+
+    public record RelationshipType(String name, List<Property> properties) {
+    }
+
+    public record RelationshipPattern(String startLabel, String type, String endLabel) {
+    }
+
+    private final Map<String, NodeLabel> labels;
+    private final Map<String, RelationshipType> relationshipTypes;
+    private final List<RelationshipPattern> patterns;
+
+    private SchemaIndex(Map<String, NodeLabel> labels, Map<String, RelationshipType> relationshipTypes, List<RelationshipPattern> patterns) {
+        this.labels = labels;
+        this.relationshipTypes = relationshipTypes;
+        this.patterns = patterns;
+    }
+
+    public static SchemaIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Parses the schema text. Both the apoc.meta.schema style map (name to node or relationship description) and the
+     * older list of {label, attributes, relationships} are understood.
+     * @return the index, empty if the schema could not be understood
+     */
+    public static SchemaIndex parse(String schema, ObjectMapper objectMapper) {
+        Object parsed;
+        try {
+            parsed = objectMapper.readValue(schema, Object.class);
+        } catch (JsonProcessingException ex) {
+            logger.warn("The schema is not JSON, it will not be pruned: {}", ex.getMessage());
+            return EMPTY;
+        }
+        //unwrap the result of CALL apoc.meta.schema() YIELD value
+        if (parsed instanceof List<?> list && list.size() == 1 && list.get(0) instanceof Map<?, ?> row && row.get("value") instanceof Map<?, ?> value) {
+            parsed = value;
+        }
+
+        Map<String, NodeLabel> labels = new LinkedHashMap<>();
+        Map<String, RelationshipType> relationshipTypes = new LinkedHashMap<>();
+        Set<RelationshipPattern> patterns = new LinkedHashSet<>();
+        if (parsed instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!(entry.getValue() instanceof Map<?, ?> description)) {
+                    continue;
+                }
+                String name = String.valueOf(entry.getKey());
+                if ("relationship".equals(description.get("type"))) {
+                    relationshipTypes.put(name, new RelationshipType(name, properties(description.get("properties"))));
+                } else {
+                    labels.put(name, new NodeLabel(name, properties(description.get("properties"))));
+                    addPatterns(name, description.get("relationships"), patterns);
+                }
+            }
+        } else if (parsed instanceof List<?> list) {
+            for (Object item : list) {
+                if (item instanceof Map<?, ?> description && description.get("label") != null) {
+                    String name = String.valueOf(description.get("label"));
+                    Object properties = description.containsKey("attributes") ? description.get("attributes") : description.get("properties");
+                    labels.put(name, new NodeLabel(name, properties(properties)));
+                    addPatterns(name, description.get("relationships"), patterns);
+                }
+            }
+        }
+        for (RelationshipPattern pattern : patterns) {
+            relationshipTypes.putIfAbsent(pattern.type(), new RelationshipType(pattern.type(), List.of()));
+        }
+        if (labels.isEmpty() && relationshipTypes.isEmpty()) {
+            logger.warn("Could not find any labels in the schema, it will not be pruned");
+            return EMPTY;
+        }
+        return new SchemaIndex(labels, relationshipTypes, new ArrayList<>(patterns));
+    }
+
+    public boolean isEmpty() {
+        return labels.isEmpty() && relationshipTypes.isEmpty();
+    }
+
+    public Collection<NodeLabel> labels() {
+        return labels.values();
+    }
+
+    public Collection<RelationshipType> relationshipTypes() {
+        return relationshipTypes.values();
+    }
+
+    public List<RelationshipPattern> patterns() {
+        return patterns;
+    }
+
+    /**
+     * Renders the labels and relationship types most relevant to the given texts (the question, and the failing cypher
+     * and its feedback when rectifying) along with their direct neighbours, in as much as fits the token budget.
+     * Everything is considered relevant when nothing matches.
+     */
+    public String render(int tokenBudget, String... relevantTexts) {
+        Set<String> terms = new HashSet<>();
+        Set<String> mentions = new HashSet<>();
+        for (String text : relevantTexts) {
+            if (text != null) {
+                terms.addAll(terms(text));
+                Arrays.stream(text.split("[^A-Za-z0-9_]+")).map(s -> s.toLowerCase(Locale.ROOT)).forEach(mentions::add);
+            }
+        }
+
+        Map<String, Integer> labelScores = new HashMap<>();
+        labels.values().forEach(l -> labelScores.put(l.name(), score(l.name(), l.properties(), terms, mentions)));
+        Map<String, Integer> typeScores = new HashMap<>();
+        relationshipTypes.values().forEach(t -> typeScores.put(t.name(), score(t.name(), t.properties(), terms, mentions)));
+
+        List<String> selectedLabels = labels.keySet().stream()
+                .filter(l -> labelScores.get(l) >= RELEVANCE_THRESHOLD)
+                .sorted(Comparator.comparing(labelScores::get).reversed())
+                .collect(Collectors.toCollection(ArrayList::new));
+        List<String> selectedTypes = relationshipTypes.keySet().stream()
+                .filter(t -> typeScores.get(t) >= RELEVANCE_THRESHOLD)
+                .sorted(Comparator.comparing(typeScores::get).reversed())
+                .collect(Collectors.toCollection(ArrayList::new));
+        if (selectedLabels.isEmpty() && selectedTypes.isEmpty()) {
+            selectedLabels.addAll(labels.keySet());
+            selectedTypes.addAll(relationshipTypes.keySet());
+        }
+
+        //the patterns touching what was selected bring in the neighbouring labels and connecting types
+        List<RelationshipPattern> selectedPatterns = new ArrayList<>();
+        for (RelationshipPattern pattern : patterns) {
+            if (selectedTypes.contains(pattern.type()) || selectedLabels.contains(pattern.startLabel()) || selectedLabels.contains(pattern.endLabel())) {
+                selectedPatterns.add(pattern);
+            }
+        }
+        for (RelationshipPattern pattern : selectedPatterns) {
+            addIfAbsent(selectedLabels, pattern.startLabel());
+            addIfAbsent(selectedLabels, pattern.endLabel());
+            addIfAbsent(selectedTypes, pattern.type());
+        }
+
+        //fill the budget in order of relevance, charging roughly four characters per token
+        int charBudget = tokenBudget * 4;
+        List<String> nodeLines = new ArrayList<>();
+        List<String> relationshipLines = new ArrayList<>();
+        List<String> patternLines = new ArrayList<>();
+        int used = 0;
+        for (String label : selectedLabels) {
+            String line = render(label, labels.containsKey(label) ? labels.get(label).properties() : List.of());
+            if (used + line.length() > charBudget) {
+                break;
+            }
+            nodeLines.add(line);
+            used += line.length();
+        }
+        for (RelationshipPattern pattern : selectedPatterns) {
+            String line = "(:" + pattern.startLabel() + ")-[:" + pattern.type() + "]->(:" + pattern.endLabel() + ")";
+            if (used + line.length() > charBudget) {
+                break;
+            }
+            patternLines.add(line);
+            used += line.length();
+        }
+        for (String type : selectedTypes) {
+            List<Property> properties = relationshipTypes.get(type).properties();
+            if (properties.isEmpty()) {
+                continue;
+            }
+            String line = render(type, properties);
+            if (used + line.length() > charBudget) {
+                break;
+            }
+            relationshipLines.add(line);
+            used += line.length();
+        }
+
+        return "Node properties:\n" + String.join("\n", nodeLines)
+                + "\nRelationship properties:\n" + String.join("\n", relationshipLines)
+                + "\nThe relationships:\n" + String.join("\n", patternLines);
+    }
+
+    private static int score(String name, List<Property> properties, Set<String> terms, Set<String> mentions) {
+        int score = 0;
+        if (mentions.contains(name.toLowerCase(Locale.ROOT))) {
+            score += 5;
+        }
+        for (String term : terms(name)) {
+            if (terms.contains(term)) {
+                score += 3;
+            }
+        }
+        for (Property property : properties) {
+            if (mentions.contains(property.name().toLowerCase(Locale.ROOT))
+                    || terms(property.name()).stream().anyMatch(terms::contains)) {
+                score += 1;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Splits on anything that isn't a letter or digit and on camel case, then lower-cases and drops plurals, so that
+     * "minifigs" in a question matches the Minifig label and "numParts" matches "num_parts"
+     */
+    static Set<String> terms(String text) {
+        Set<String> terms = new HashSet<>();
+        for (String word : text.split("[^A-Za-z0-9]+|(?<=[a-z])(?=[A-Z])")) {
+            String term = word.toLowerCase(Locale.ROOT);
+            if (term.length() < 3) {
+                continue;
+            }
+            if (term.endsWith("ies") && term.length() > 4) {
+                term = term.substring(0, term.length() - 3) + "y";
+            } else if (term.endsWith("s") && !term.endsWith("ss")) {
+                term = term.substring(0, term.length() - 1);
+            }
+            terms.add(term);
+        }
+        return terms;
+    }
+
+    private static String render(String name, List<Property> properties) {
+        return name + " {" + properties.stream()
+                .map(p -> p.name() + ": " + p.type())
+                .collect(Collectors.joining(", ")) + "}";
+    }
+
+    private static void addIfAbsent(List<String> names, String name) {
+        if (!names.contains(name)) {
+            names.add(name);
+        }
+    }
+
+    private static List<Property> properties(Object properties) {
+        if (!(properties instanceof Map<?, ?> map)) {
+            return List.of();
+        }
+        List<Property> result = new ArrayList<>();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            Object type = entry.getValue() instanceof Map<?, ?> description ? description.get("type") : entry.getValue();
+            result.add(new Property(String.valueOf(entry.getKey()), type == null ? "ANY" : String.valueOf(type)));
+        }
+        return result;
+    }
+
+    private static void addPatterns(String label, Object relationships, Set<RelationshipPattern> patterns) {
+        if (!(relationships instanceof Map<?, ?> map)) {
+            return;
+        }
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            String type = String.valueOf(entry.getKey());
+            if (entry.getValue() instanceof Map<?, ?> description) {
+                boolean incoming = "in".equals(description.get("direction"));
+                List<String> others = description.get("labels") instanceof List<?> list
+                        ? list.stream().map(String::valueOf).toList()
+                        : List.of();
+                for (String other : others) {
+                    patterns.add(incoming ? new RelationshipPattern(other, type, label) : new RelationshipPattern(label, type, other));
+                }
+            } else if (entry.getValue() != null) {
+                patterns.add(new RelationshipPattern(label, type, String.valueOf(entry.getValue())));
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package aldrinm.agent.schema;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+
+/**
+ * A schema as returned by the get_neo4j_schema tool, its parsed index, and the fingerprint of the database it was
+ * read from
+ */
+public record SchemaSnapshot(String schema, SchemaIndex index, @Nullable String fingerprint, Instant loadedAt) {
+}
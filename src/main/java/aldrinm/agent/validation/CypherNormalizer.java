@@ -0,0 +1,157 @@
+package aldrinm.agent.validation;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Reduces cypher to a canonical form, so that statements which only differ in layout, comments, keyword case,
+ * quoting or the names of their variables and aliases are recognised as the same statement. Labels, relationship
+ * types, properties and literals are left alone, as they change what the statement means.
+ */
+public final class CypherNormalizer {
+
+    private final static Set<String> KEYWORDS = Set.of(
+            "MATCH", "OPTIONAL", "WHERE", "RETURN", "WITH", "AS", "AND", "OR", "XOR", "NOT", "ORDER", "BY", "ASC",
+            "ASCENDING", "DESC", "DESCENDING", "LIMIT", "SKIP", "OFFSET", "DISTINCT", "UNWIND", "CALL", "YIELD", "CASE",
+            "WHEN", "THEN", "ELSE", "END", "IN", "IS", "NULL", "TRUE", "FALSE", "CONTAINS", "STARTS", "ENDS", "EXISTS",
+            "UNION", "ALL", "CREATE", "MERGE", "SET", "DELETE", "DETACH", "REMOVE", "ON", "FOREACH", "USE", "EXPLAIN",
+            "PROFILE");
+
+    private enum Type {
+        IDENTIFIER,
+        STRING,
+        OTHER
+    }
+
+    private record Token(Type type, String text) {
+    }
+
+    private CypherNormalizer() {
+    }
+
+    /**
+     * @return a short hash of the canonical form of the cypher, the same for statements that mean the same
+     */
+    public static String key(String cypher) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(normalize(cypher).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return the tokens of the cypher separated by single spaces, with keywords upper-cased, function names
+     * lower-cased, strings single-quoted and variables renamed v0, v1... in order of appearance
+     */
+    public static String normalize(String cypher) {
+        List<Token> tokens = tokenize(cypher);
+        while (!tokens.isEmpty() && tokens.get(tokens.size() - 1).text().equals(";")) {
+            tokens.remove(tokens.size() - 1);
+        }
+        Set<String> variables = variables(tokens);
+        Map<String, String> renamed = new HashMap<>();
+        StringJoiner normalized = new StringJoiner(" ");
+        int braces = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            String text = token.text();
+            if (token.type() == Type.STRING) {
+                normalized.add("'" + text + "'");
+                continue;
+            }
+            if (token.type() == Type.OTHER) {
+                braces += text.equals("{") ? 1 : text.equals("}") ? -1 : 0;
+                normalized.add(text);
+                continue;
+            }
+            String previous = i > 0 ? tokens.get(i - 1).text() : "";
+            String next = i + 1 < tokens.size() ? tokens.get(i + 1).text() : "";
+            boolean qualified = previous.equals(".") || previous.equals(":") || previous.equals("$");
+            if (qualified || (braces > 0 && next.equals(":"))) {
+                //a property, label, relationship type, parameter or map key
+                normalized.add(quoted(text));
+            } else if (KEYWORDS.contains(text.toUpperCase(Locale.ROOT))) {
+                normalized.add(text.toUpperCase(Locale.ROOT));
+            } else if (next.equals("(")) {
+                normalized.add(text.toLowerCase(Locale.ROOT));
+            } else if (variables.contains(text)) {
+                normalized.add(renamed.computeIfAbsent(text, name -> "v" + renamed.size()));
+            } else {
+                normalized.add(quoted(text));
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @return the names bound by the statement: those opening a node, relationship or list pattern, and aliases
+     */
+    private static Set<String> variables(List<Token> tokens) {
+        Set<String> variables = new HashSet<>();
+        for (int i = 1; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.type() != Type.IDENTIFIER || KEYWORDS.contains(token.text().toUpperCase(Locale.ROOT))) {
+                continue;
+            }
+            String previous = tokens.get(i - 1).text();
+            String next = i + 1 < tokens.size() ? tokens.get(i + 1).text() : "";
+            if (((previous.equals("(") || previous.equals("[")) && !next.equals("(") && !next.equals("."))
+                    || previous.equalsIgnoreCase("AS")) {
+                variables.add(token.text());
+            }
+        }
+        return variables;
+    }
+
+    private static String quoted(String name) {
+        return name.matches("[A-Za-z_][A-Za-z0-9_]*") ? name : "`" + name + "`";
+    }
+
+    private static List<Token> tokenize(String cypher) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < cypher.length()) {
+            char c = cypher.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (cypher.startsWith("//", i)) {
+                int end = cypher.indexOf('\n', i);
+                i = end < 0 ? cypher.length() : end;
+            } else if (cypher.startsWith("/*", i)) {
+                int end = cypher.indexOf("*/", i + 2);
+                i = end < 0 ? cypher.length() : end + 2;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                int end = i + 1;
+                while (end < cypher.length() && cypher.charAt(end) != c) {
+                    end += cypher.charAt(end) == '\\' && c != '`' ? 2 : 1;
+                }
+                String text = cypher.substring(i + 1, Math.min(end, cypher.length()));
+                tokens.add(new Token(c == '`' ? Type.IDENTIFIER : Type.STRING, text));
+                i = end + 1;
+            } else if (Character.isLetter(c) || c == '_') {
+                int end = i + 1;
+                while (end < cypher.length() && (Character.isLetterOrDigit(cypher.charAt(end)) || cypher.charAt(end) == '_')) {
+                    end++;
+                }
+                tokens.add(new Token(Type.IDENTIFIER, cypher.substring(i, end)));
+                i = end;
+            } else if (Character.isDigit(c)) {
+                int end = i + 1;
+                while (end < cypher.length() && (Character.isLetterOrDigit(cypher.charAt(end))
+                        || (cypher.charAt(end) == '.' && !cypher.startsWith("..", end)))) {
+                    end++;
+                }
+                tokens.add(new Token(Type.OTHER, cypher.substring(i, end)));
+                i = end;
+            } else {
+                tokens.add(new Token(Type.OTHER, String.valueOf(c)));
+                i++;
+            }
+        }
+        return tokens;
+    }
+}
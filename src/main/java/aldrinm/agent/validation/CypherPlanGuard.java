@@ -0,0 +1,192 @@
+package aldrinm.agent.validation;
+
+import aldrinm.agent.concurrency.ConcurrencyLimits;
+import aldrinm.agent.cyver.CyverSyntaxValidatonResult;
+import org.jetbrains.annotations.Nullable;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.TransactionConfig;
+import org.neo4j.driver.exceptions.ClientException;
+import org.neo4j.driver.summary.Plan;
+import org.neo4j.driver.summary.ResultSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Asks Neo4j to plan the cypher with EXPLAIN, without running it, and reports plans that would be expensive to run:
+ * cartesian products, scans of every node, variable-length paths without an upper bound, label scans filtered on a
+ * property without an index, and steps estimated to go through too many rows. The findings are reported like those
+ * of the CyVer validators, so that rectifyCypher can rewrite the query.
+ */
+@Component
+public class CypherPlanGuard {
+
+    private final static Logger logger = LoggerFactory.getLogger(CypherPlanGuard.class);
+
+    public final static String PLAN_VALIDATOR = "query_plan";
+
+    //the codes of the errors Neo4j reports for the statement itself, e.g. Neo.ClientError.Statement.SyntaxError
+    private final static String STATEMENT_ERROR = "Neo.ClientError.Statement.";
+
+    //*, *.. and *2.. but not *2 or *1..3
+    private final static Pattern UNBOUNDED_LENGTH = Pattern.compile("\\*(\\d*\\.\\.)?\\]");
+
+    private final Driver driver;
+    private final ConcurrencyLimits limits;
+    private final boolean enabled;
+    private final String database;
+    private final double maxEstimatedRows;
+    private final double maxLabelScanRows;
+    private final Duration timeout;
+
+    public CypherPlanGuard(Driver driver,
+                           ConcurrencyLimits limits,
+                           @Value("${cypher.plan-guard.enabled:true}") boolean enabled,
+                           @Value("${spring.data.neo4j.database:}") String database,
+                           @Value("${cypher.plan-guard.max-estimated-rows:1000000}") double maxEstimatedRows,
+                           @Value("${cypher.plan-guard.max-label-scan-rows:10000}") double maxLabelScanRows,
+                           @Value("${cypher.plan-guard.timeout:5s}") Duration timeout) {
+        this.driver = driver;
+        this.limits = limits;
+        this.enabled = enabled;
+        this.database = database;
+        this.maxEstimatedRows = maxEstimatedRows;
+        this.maxLabelScanRows = maxLabelScanRows;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return a guard with the same limits that plans the cypher in the given database
+     */
+    public CypherPlanGuard forDatabase(String database) {
+        return new CypherPlanGuard(driver, limits, enabled, database, maxEstimatedRows, maxLabelScanRows, timeout);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return what is wrong with the plan of the cypher, or null if it could not be planned for reasons that have
+     * nothing to do with the cypher, such as the database being unavailable
+     */
+    @Nullable
+    public CyverSyntaxValidatonResult check(String cypherStatement) {
+        Plan plan;
+        try {
+            plan = limits.neo4j(() -> explain(cypherStatement));
+        } catch (ClientException ex) {
+            if (ex.code() == null || !ex.code().startsWith(STATEMENT_ERROR)) {
+                //an unknown or offline database, or credentials that are refused, not a problem with the cypher
+                logger.warn("Could not explain the cypher, skipping the plan check: {}", ex.getMessage());
+                return null;
+            }
+            //the cypher itself was rejected, e.g. a function or procedure that doesn't exist
+            return result(cypherStatement, List.of(ex.getMessage()));
+        } catch (RuntimeException ex) {
+            logger.warn("Could not explain the cypher, skipping the plan check: {}", ex.getMessage());
+            return null;
+        }
+        if (plan == null) {
+            return null;
+        }
+        return result(cypherStatement, inspect(plan, maxEstimatedRows, maxLabelScanRows));
+    }
+
+    @Nullable
+    private Plan explain(String cypherStatement) {
+        try (Session session = driver.session(sessionConfig())) {
+            ResultSummary summary = session.run("EXPLAIN " + cypherStatement,
+                    TransactionConfig.builder().withTimeout(timeout).build()).consume();
+            return summary.hasPlan() ? summary.plan() : null;
+        }
+    }
+
+    private SessionConfig sessionConfig() {
+        SessionConfig.Builder builder = SessionConfig.builder();
+        if (!database.isBlank()) {
+            builder.withDatabase(database);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return a description of every problem found in the plan
+     */
+    static List<String> inspect(Plan root, double maxEstimatedRows, double maxLabelScanRows) {
+        Set<String> findings = new LinkedHashSet<>();
+        Plan mostRows = null;
+        Deque<Plan> plans = new ArrayDeque<>();
+        plans.push(root);
+        while (!plans.isEmpty()) {
+            Plan plan = plans.pop();
+            String operator = operator(plan);
+            String details = details(plan);
+            switch (operator) {
+                case "CartesianProduct" ->
+                        findings.add("The query builds a cartesian product of patterns that are not connected to each other. Connect the patterns, or match them in separate steps joined by a WITH.");
+                case "AllNodesScan" ->
+                        findings.add("The query scans every node of the database (" + details + "). Give the node a label.");
+                case "VarLengthExpand(All)", "VarLengthExpand(Into)", "VarLengthExpand(Pruning)", "BFSPruningVarExpand" -> {
+                    if (UNBOUNDED_LENGTH.matcher(details).find()) {
+                        findings.add("The variable-length relationship " + details + " has no upper bound. Give it a maximum length, e.g. *1..5.");
+                    }
+                }
+                case "Filter" -> {
+                    for (Plan child : plan.children()) {
+                        if (operator(child).equals("NodeByLabelScan") && estimatedRows(child) > maxLabelScanRows
+                                && details.matches("(?s).*\\w\\.\\w+.*")) {
+                            findings.add(String.format("The query scans all %.0f %s nodes and filters them on %s, as there is no index to use. Filter on an indexed property, or narrow the match first.",
+                                    estimatedRows(child), details(child), details));
+                        }
+                    }
+                }
+                default -> {
+                }
+            }
+            if (mostRows == null || estimatedRows(plan) > estimatedRows(mostRows)) {
+                mostRows = plan;
+            }
+            plan.children().forEach(plans::push);
+        }
+        if (mostRows != null && estimatedRows(mostRows) > maxEstimatedRows) {
+            findings.add(String.format("The query is estimated to go through %.0f rows at %s. Narrow the match, or aggregate or limit earlier.",
+                    estimatedRows(mostRows), operator(mostRows)));
+        }
+        return new ArrayList<>(findings);
+    }
+
+    private static CyverSyntaxValidatonResult result(String cypherStatement, List<String> findings) {
+        List<Map<String, Object>> metadata = findings.stream()
+                .map(finding -> Map.<String, Object>of("description", finding))
+                .toList();
+        return new CyverSyntaxValidatonResult(PLAN_VALIDATOR, cypherStatement, findings.isEmpty(),
+                findings.isEmpty() ? 1.0f : 0.5f, metadata);
+    }
+
+    /**
+     * @return the operator without the runtime suffix, NodeByLabelScan for NodeByLabelScan@neo4j
+     */
+    private static String operator(Plan plan) {
+        String operator = plan.operatorType();
+        int at = operator.indexOf('@');
+        return at < 0 ? operator : operator.substring(0, at);
+    }
+
+    private static String details(Plan plan) {
+        org.neo4j.driver.Value details = plan.arguments().get("Details");
+        return details != null && !details.isNull() ? details.asString() : "";
+    }
+
+    private static double estimatedRows(Plan plan) {
+        org.neo4j.driver.Value estimatedRows = plan.arguments().get("EstimatedRows");
+        return estimatedRows != null && !estimatedRows.isNull() ? estimatedRows.asDouble() : 0;
+    }
+}
@@ -0,0 +1,134 @@
+package aldrinm.agent.validation;
+
+import aldrinm.agent.cyver.CyverSyntaxValidatonResult;
+
+import java.util.*;
+
+/**
+ * A quick in-process syntax check that catches queries which are obviously broken - leftover markdown fences, prose
+ * around the query, unbalanced brackets or quotes, nothing to return - before paying for a round-trip to the CyVer
+ * syntax validator. It is deliberately lenient: anything it can't rule out is left to CyVer.
+ */
+public final class CypherPreValidator {
+
+    public final static String VALIDATION_TYPE = "syntax";
+
+    private final static Set<String> LEADING_CLAUSES = Set.of(
+            "MATCH", "OPTIONAL", "WITH", "UNWIND", "CALL", "RETURN", "CREATE", "MERGE", "USE", "EXPLAIN", "PROFILE",
+            "SHOW", "LOAD", "FOREACH", "USING", "CYPHER");
+    private final static Set<String> CLAUSES_WITHOUT_RETURN = Set.of(
+            "CREATE", "MERGE", "DELETE", "SET", "REMOVE", "FOREACH", "CALL", "SHOW", "LOAD");
+    private final static Map<Character, Character> CLOSING = Map.of('(', ')', '[', ']', '{', '}');
+
+    private CypherPreValidator() {
+    }
+
+    /**
+     * @return a failed syntax result in the same shape CyVer returns, or empty if the query looks plausible
+     */
+    public static Optional<CyverSyntaxValidatonResult> validate(String cypherStatement) {
+        List<Map<String, Object>> problems = new ArrayList<>();
+        if (cypherStatement == null || cypherStatement.isBlank()) {
+            problems.add(problem("PreValidation.EmptyQuery", "The query is empty"));
+            return Optional.of(failed(cypherStatement, problems));
+        }
+        if (cypherStatement.contains("```")) {
+            problems.add(problem("PreValidation.MarkdownFence", "The query contains markdown fences (```). Return only the plain cypher"));
+        }
+
+        int problemsBeforeScan = problems.size();
+        List<String> keywords = scan(cypherStatement.replaceAll("```[A-Za-z]*", " "), problems);
+        if (problems.size() > problemsBeforeScan) {
+            //the keywords are incomplete when the scan stopped early
+            return Optional.of(failed(cypherStatement, problems));
+        }
+        if (!keywords.isEmpty() && !LEADING_CLAUSES.contains(keywords.get(0))) {
+            problems.add(problem("PreValidation.InvalidStart", "The query must start with a cypher clause, not '" + keywords.get(0).toLowerCase() + "'"));
+        }
+        if (!keywords.contains("RETURN") && keywords.stream().noneMatch(CLAUSES_WITHOUT_RETURN::contains)) {
+            problems.add(problem("PreValidation.MissingReturn", "The query does not update anything and has no RETURN clause"));
+        }
+
+        return problems.isEmpty() ? Optional.empty() : Optional.of(failed(cypherStatement, problems));
+    }
+
+    /**
+     * Walks the query outside of string literals, quoted identifiers and comments, checking that brackets and quotes
+     * are balanced
+     * @return the upper-cased words of the query, in order
+     */
+    private static List<String> scan(String cypher, List<Map<String, Object>> problems) {
+        List<String> words = new ArrayList<>();
+        Deque<Character> open = new ArrayDeque<>();
+        int i = 0;
+        int length = cypher.length();
+        while (i < length) {
+            char c = cypher.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                int end = closingQuote(cypher, i);
+                if (end < 0) {
+                    problems.add(problem("PreValidation.UnterminatedString", "The quote " + c + " at position " + i + " is never closed"));
+                    return words;
+                }
+                i = end + 1;
+            } else if (c == '/' && i + 1 < length && cypher.charAt(i + 1) == '/') {
+                int end = cypher.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '/' && i + 1 < length && cypher.charAt(i + 1) == '*') {
+                int end = cypher.indexOf("*/", i + 2);
+                if (end < 0) {
+                    problems.add(problem("PreValidation.UnterminatedComment", "The comment at position " + i + " is never closed"));
+                    return words;
+                }
+                i = end + 2;
+            } else if (CLOSING.containsKey(c)) {
+                open.push(c);
+                i++;
+            } else if (CLOSING.containsValue(c)) {
+                if (open.isEmpty() || CLOSING.get(open.peek()) != c) {
+                    problems.add(problem("PreValidation.UnbalancedBrackets", "Unexpected '" + c + "' at position " + i));
+                    return words;
+                }
+                open.pop();
+                i++;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(cypher.charAt(i)) || cypher.charAt(i) == '_')) {
+                    i++;
+                }
+                //property keys and labels are not keywords
+                char previous = start > 0 ? cypher.charAt(start - 1) : ' ';
+                if (previous != '.' && previous != ':') {
+                    words.add(cypher.substring(start, i).toUpperCase(Locale.ROOT));
+                }
+            } else {
+                i++;
+            }
+        }
+        if (!open.isEmpty()) {
+            problems.add(problem("PreValidation.UnbalancedBrackets", "'" + open.peek() + "' is never closed"));
+        }
+        return words;
+    }
+
+    private static int closingQuote(String cypher, int start) {
+        char quote = cypher.charAt(start);
+        for (int i = start + 1; i < cypher.length(); i++) {
+            char c = cypher.charAt(i);
+            if (c == '\\' && quote != '`') {
+                i++;
+            } else if (c == quote) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Map<String, Object> problem(String code, String description) {
+        return Map.of("code", code, "description", description);
+    }
+
+    private static CyverSyntaxValidatonResult failed(String cypherStatement, List<Map<String, Object>> problems) {
+        return new CyverSyntaxValidatonResult(VALIDATION_TYPE, cypherStatement, false, 0.0f, problems);
+    }
+}
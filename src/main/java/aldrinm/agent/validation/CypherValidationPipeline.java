@@ -0,0 +1,209 @@
+package aldrinm.agent.validation;
+
+import aldrinm.agent.ValidationReport;
+import aldrinm.agent.concurrency.ConcurrencyLimits;
+import aldrinm.agent.cyver.CyverSyntaxValidatonResult;
+import aldrinm.agent.mcp.McpToolRegistry;
+import aldrinm.agent.metrics.AgentMetrics;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import jakarta.annotation.PreDestroy;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs the CyVer validators against a cypher statement. Syntax is checked first, in process and then by CyVer; the
+ * schema and properties validators only run once the syntax passes, and then concurrently since they don't depend on
+ * each other. Cypher that passes them all has its plan checked by the {@link CypherPlanGuard}.
+ */
+@Component
+public class CypherValidationPipeline {
+
+    private final static Logger logger = LoggerFactory.getLogger(CypherValidationPipeline.class);
+
+    public final static String SYNTAX_VALIDATOR = "validate_cypher_syntax";
+    public final static String SCHEMA_VALIDATOR = "schema_validator";
+    public final static String PROPERTIES_VALIDATOR = "validate_cypher_properties";
+
+    private final McpToolRegistry toolRegistry;
+    private final CypherPlanGuard planGuard;
+    private final AgentMetrics metrics;
+    private final ConcurrencyLimits limits;
+    private final Duration timeout;
+    private final boolean failFast;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public CypherValidationPipeline(McpToolRegistry toolRegistry,
+                                    CypherPlanGuard planGuard,
+                                    AgentMetrics metrics,
+                                    ConcurrencyLimits limits,
+                                    @Value("${cypher.validation.timeout:30s}") Duration timeout,
+                                    @Value("${cypher.validation.fail-fast:false}") boolean failFast) {
+        this.toolRegistry = toolRegistry;
+        this.planGuard = planGuard;
+        this.metrics = metrics;
+        this.limits = limits;
+        this.timeout = timeout;
+        this.failFast = failFast;
+    }
+
+    /**
+     * @return a pipeline with the same settings that validates against the given database, with the validators of
+     * the given registry; it must be shut down once no longer used
+     */
+    public CypherValidationPipeline forDatabase(McpToolRegistry toolRegistry, String database) {
+        return new CypherValidationPipeline(toolRegistry, planGuard.forDatabase(database), metrics, limits, timeout, failFast);
+    }
+
+    public ValidationReport validate(String cypherStatement) {
+        //obviously broken queries don't need a round-trip to CyVer
+        long start = System.nanoTime();
+        Optional<CyverSyntaxValidatonResult> preValidationResult = CypherPreValidator.validate(cypherStatement);
+        metrics.recordValidator("pre_validation", preValidationResult.isPresent() ? "fail" : "pass", Duration.ofNanos(System.nanoTime() - start));
+        if (preValidationResult.isPresent()) {
+            logger.info("Cypher failed pre-validation: {}", preValidationResult.get().metadata());
+            return new ValidationReport(preValidationResult.get(), null, null);
+        }
+
+        CyverSyntaxValidatonResult syntaxValidationResult = runValidators(cypherStatement, List.of(SYNTAX_VALIDATOR))
+                .get(SYNTAX_VALIDATOR);
+        if (syntaxValidationResult.isValid() == null) {
+            //neither valid nor invalid, the schema and properties can't be checked on it and nor can it be rectified
+            throw new ValidationInconclusiveException(List.of(SYNTAX_VALIDATOR), "did not say whether the syntax is valid");
+        }
+        if (!syntaxValidationResult.isValid()) {
+            //only bother with the next validations if the syntax is correct
+            return new ValidationReport(syntaxValidationResult, null, null);
+        }
+
+        Map<String, CyverSyntaxValidatonResult> results = runValidators(cypherStatement, List.of(SCHEMA_VALIDATOR, PROPERTIES_VALIDATOR));
+        //a validator cancelled by fail-fast is left as null, the same as one that never ran
+        CyverSyntaxValidatonResult schemaResult = results.get(SCHEMA_VALIDATOR);
+        CyverSyntaxValidatonResult propertiesResult = results.get(PROPERTIES_VALIDATOR);
+        if (schemaResult == null || propertiesResult == null || !passes(schemaResult) || !passes(propertiesResult)) {
+            return new ValidationReport(syntaxValidationResult, schemaResult, propertiesResult);
+        }
+        return new ValidationReport(syntaxValidationResult, schemaResult, propertiesResult, checkPlan(cypherStatement));
+    }
+
+    /**
+     * Plans are only worth checking for cypher that is otherwise valid, since rectifying it changes the plan anyway
+     */
+    @Nullable
+    private CyverSyntaxValidatonResult checkPlan(String cypherStatement) {
+        if (!planGuard.isEnabled()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        CyverSyntaxValidatonResult planResult = planGuard.check(cypherStatement);
+        metrics.recordValidator(CypherPlanGuard.PLAN_VALIDATOR, planResult != null ? outcome(planResult) : "skipped",
+                Duration.ofNanos(System.nanoTime() - start));
+        if (planResult != null && !passes(planResult)) {
+            logger.info("Cypher has an expensive plan: {}", planResult.metadata());
+        }
+        return planResult;
+    }
+
+    /**
+     * A schema or properties result passes when it scores full marks and has nothing to report
+     */
+    public static boolean passes(CyverSyntaxValidatonResult result) {
+        if (result.score() != null && result.score() < 1.0f) {
+            return false;
+        }
+        return result.metadata() == null || result.metadata().isEmpty();
+    }
+
+    /**
+     * Runs the given validators concurrently, waiting at most the configured timeout for them. Validators that don't
+     * answer in time are asked once more, and if they still don't the validation is inconclusive. In fail-fast mode
+     * the outstanding validators are cancelled as soon as one of them reports a problem.
+     * @throws ValidationInconclusiveException if validators did not answer either time
+     */
+    private Map<String, CyverSyntaxValidatonResult> runValidators(String cypherStatement, List<String> toolNames) {
+        Map<String, CyverSyntaxValidatonResult> results = new HashMap<>();
+        List<String> timedOut = runValidators(cypherStatement, toolNames, results);
+        if (!timedOut.isEmpty()) {
+            //not answering says nothing about the cypher, so it must not be failed for it
+            logger.info("Asking {} again", timedOut);
+            timedOut = runValidators(cypherStatement, timedOut, results);
+        }
+        if (!timedOut.isEmpty()) {
+            throw new ValidationInconclusiveException(timedOut, timeout);
+        }
+        return results;
+    }
+
+    /**
+     * @return the validators that did not answer in time
+     */
+    private List<String> runValidators(String cypherStatement, List<String> toolNames, Map<String, CyverSyntaxValidatonResult> results) {
+        CompletionService<Map.Entry<String, CyverSyntaxValidatonResult>> completionService = new ExecutorCompletionService<>(executor);
+        Map<String, Future<Map.Entry<String, CyverSyntaxValidatonResult>>> pending = new HashMap<>();
+        for (String toolName : toolNames) {
+            pending.put(toolName, completionService.submit(() -> {
+                long start = System.nanoTime();
+                CyverSyntaxValidatonResult result = validateCypherWithTool(cypherStatement, toolName);
+                metrics.recordValidator(toolName, outcome(result), Duration.ofNanos(System.nanoTime() - start));
+                return Map.entry(toolName, result);
+            }));
+        }
+        long started = System.nanoTime();
+
+        List<String> timedOut = new ArrayList<>();
+        long deadline = started + timeout.toNanos();
+        try {
+            while (!pending.isEmpty()) {
+                Future<Map.Entry<String, CyverSyntaxValidatonResult>> done = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    for (String toolName : pending.keySet()) {
+                        logger.warn("Validator {} did not respond within {}", toolName, timeout);
+                        metrics.recordValidator(toolName, "timeout", timeout);
+                        timedOut.add(toolName);
+                    }
+                    break;
+                }
+                Map.Entry<String, CyverSyntaxValidatonResult> entry = done.get();
+                pending.remove(entry.getKey());
+                results.put(entry.getKey(), entry.getValue());
+                if (failFast && !pending.isEmpty() && !passes(entry.getValue())) {
+                    logger.info("Validator {} failed, cancelling {}", entry.getKey(), pending.keySet());
+                    pending.keySet().forEach(toolName -> metrics.recordValidator(toolName, "cancelled", Duration.ofNanos(System.nanoTime() - started)));
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while validating the cypher", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Could not validate the cypher", ex.getCause());
+        } finally {
+            pending.values().forEach(f -> f.cancel(true));
+        }
+        return timedOut;
+    }
+
+    private static String outcome(CyverSyntaxValidatonResult result) {
+        return !Boolean.TRUE.equals(result.isValid()) || !passes(result) ? "fail" : "pass";
+    }
+
+    CyverSyntaxValidatonResult validateCypherWithTool(String cypherStatement, String toolName) {
+        String textValue = limits.validator(() -> toolRegistry.callForText("cyver", toolName, Map.of("query", cypherStatement)));
+        try {
+            return toolRegistry.objectMapper().readValue(textValue, CyverSyntaxValidatonResult.class);
+        } catch (JsonProcessingException ex) {
+            throw new RuntimeException("Failed to parse result", ex);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
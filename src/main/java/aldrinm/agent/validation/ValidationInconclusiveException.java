@@ -0,0 +1,27 @@
+package aldrinm.agent.validation;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Thrown when validators did not answer, even when asked again, or answered without saying whether the cypher is
+ * valid. This says nothing about the cypher, so it is not reported as a failed validation that would have the cypher
+ * rewritten.
+ */
+public class ValidationInconclusiveException extends RuntimeException {
+
+    private final List<String> validators;
+
+    public ValidationInconclusiveException(List<String> validators, Duration timeout) {
+        this(validators, "did not respond within " + timeout);
+    }
+
+    public ValidationInconclusiveException(List<String> validators, String reason) {
+        super("Could not validate the cypher, " + String.join(", ", validators) + " " + reason);
+        this.validators = List.copyOf(validators);
+    }
+
+    public List<String> validators() {
+        return validators;
+    }
+}
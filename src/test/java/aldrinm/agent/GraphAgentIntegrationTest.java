@@ -1,16 +1,53 @@
 package aldrinm.agent;
 
+import aldrinm.agent.progress.AgentProgressEvent;
 import com.embabel.agent.api.common.autonomy.AgentInvocation;
 import com.embabel.agent.domain.io.UserInput;
 import com.embabel.agent.testing.integration.EmbabelMockitoIntegrationTest;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.EventListener;
+import org.springframework.test.context.TestPropertySource;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static aldrinm.agent.progress.AgentProgressEvent.Stage.*;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.contains;
 
+//the answer is formatted by the LLM, the templates are covered by ResultFormatterTest
+@TestPropertySource(properties = "cypher.format.enabled=false")
 class GraphAgentIntegrationTest extends EmbabelMockitoIntegrationTest {
 
+    @TestConfiguration
+    static class ProgressConfiguration {
+
+        @Bean
+        ProgressRecorder progressRecorder() {
+            return new ProgressRecorder();
+        }
+    }
+
+    static class ProgressRecorder {
+
+        final List<AgentProgressEvent> events = new CopyOnWriteArrayList<>();
+
+        @EventListener
+        void onProgress(AgentProgressEvent event) {
+            events.add(event);
+        }
+    }
+
+    @Autowired
+    private ProgressRecorder progressRecorder;
+
+    @Autowired
+    private RunTracker runTracker;
+
     @BeforeAll
     static void setUp() {
         // Set shell configuration to non-interactive mode
@@ -20,6 +57,7 @@ class GraphAgentIntegrationTest extends EmbabelMockitoIntegrationTest {
     @Test
     void shouldExecuteCompleteWorkflow() {
         var input = new UserInput("How many minifigs are available ?");
+        var run = runTracker.track(input);
 
         CypherStatementRequest cypherStatementRequest = new CypherStatementRequest("MATCH (n:Minifig) RETURN count(n) as numMinifigs");
         whenCreateObject(prompt -> prompt.contains("How many minifigs are available ?"), CypherStatementRequest.class)
@@ -38,5 +76,12 @@ class GraphAgentIntegrationTest extends EmbabelMockitoIntegrationTest {
                 llm -> llm.getToolGroups().isEmpty());
         verifyGenerateTextMatching(prompt -> prompt.contains("Format this response for text presentation"));
         verifyNoMoreInteractions();
+
+        //valid cypher goes straight from validation to execution, each step published as it completes
+        List<AgentProgressEvent.Stage> stages = progressRecorder.events.stream()
+                .filter(event -> run.id().equals(event.runId()))
+                .map(AgentProgressEvent::stage)
+                .toList();
+        assertEquals(List.of(GENERATED, VALIDATING, VALIDATED, EXECUTING, EXECUTED, FORMATTING, ANSWERED), stages);
     }
 }
@@ -0,0 +1,30 @@
+package aldrinm.agent;
+
+import aldrinm.agent.cyver.CyverSyntaxValidatonResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphAgentTest {
+
+    @Test
+    void shouldNotPassAReportWhoseSyntaxWasNotFoundValid() {
+        ValidationReport inconclusive = new ValidationReport(
+                new CyverSyntaxValidatonResult("validate_cypher_syntax", "MATCH (n) RETURN n", null, null, null), null, null);
+
+        assertFalse(GraphAgent.validationReportPasses(inconclusive));
+        assertNotNull(GraphAgent.formatFeedbackIfAny(inconclusive));
+        assertEquals(0.0, inconclusive.score());
+        //a cached cypher has no results at all and still passes
+        assertTrue(GraphAgent.validationReportPasses(new ValidationReport(null, null, null)));
+    }
+
+    @Test
+    void shouldPassAReportWhoseValidatorsAllPassed() {
+        CyverSyntaxValidatonResult valid = new CyverSyntaxValidatonResult("validator", "MATCH (n) RETURN n", true, 1.0f, List.of());
+
+        assertTrue(GraphAgent.validationReportPasses(new ValidationReport(valid, valid, valid)));
+    }
+}
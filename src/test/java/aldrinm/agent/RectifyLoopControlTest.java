@@ -0,0 +1,66 @@
+package aldrinm.agent;
+
+import aldrinm.agent.cyver.CyverSyntaxValidatonResult;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RectifyLoopControlTest {
+
+    private final RectifyLoopControl loopControl = new RectifyLoopControl(6, Duration.ofMinutes(2), 0.10, 2,
+            "grok-3", "grok-3-mini");
+
+    /**
+     * @return attempts whose schema validator reported the given numbers of problems
+     */
+    private static List<CypherAttempt> attempts(int... problems) {
+        List<CypherAttempt> attempts = new ArrayList<>();
+        for (int i = 0; i < problems.length; i++) {
+            List<Map<String, Object>> metadata = new ArrayList<>();
+            for (int j = 0; j < problems[i]; j++) {
+                metadata.add(Map.of("description", "Label Minifigs does not exist"));
+            }
+            CyverSyntaxValidatonResult schemaResult = new CyverSyntaxValidatonResult("schema_validator", "MATCH #" + i, true,
+                    problems[i] == 0 ? 1.0f : 0.5f, metadata);
+            attempts.add(new CypherAttempt("MATCH #" + i, new ValidationReport(null, schemaResult, null)));
+        }
+        return attempts;
+    }
+
+    @Test
+    void shouldContinueWhileTheScoreImproves() {
+        var decision = loopControl.decide(attempts(3, 2, 1), Duration.ofSeconds(10), 0.01, -1);
+
+        assertEquals(RectifyLoopControl.Outcome.CONTINUE, decision.outcome());
+    }
+
+    @Test
+    void shouldEscalateAndThenAbortOnceTheScoreStopsImproving() {
+        assertEquals(RectifyLoopControl.Outcome.CONTINUE, loopControl.decide(attempts(2, 3), Duration.ZERO, 0, -1).outcome());
+        assertEquals(RectifyLoopControl.Outcome.ESCALATE, loopControl.decide(attempts(2, 3, 2), Duration.ZERO, 0, -1).outcome());
+        assertEquals(RectifyLoopControl.Outcome.CONTINUE, loopControl.decide(attempts(2, 3, 2, 2), Duration.ZERO, 0, 3).outcome());
+        assertEquals(RectifyLoopControl.Outcome.ABORT, loopControl.decide(attempts(2, 3, 2, 2, 4), Duration.ZERO, 0, 3).outcome());
+    }
+
+    @Test
+    void shouldAbortOnceABudgetIsSpent() {
+        assertEquals(RectifyLoopControl.Outcome.ABORT, loopControl.decide(attempts(6, 5, 4, 3, 2, 1), Duration.ZERO, 0, -1).outcome());
+        assertEquals(RectifyLoopControl.Outcome.ABORT, loopControl.decide(attempts(2), Duration.ofMinutes(3), 0, -1).outcome());
+        assertEquals(RectifyLoopControl.Outcome.ABORT, loopControl.decide(attempts(2), Duration.ZERO, 0.25, -1).outcome());
+    }
+
+    @Test
+    void shouldAbortWithoutAStrongerModelToEscalateTo() {
+        RectifyLoopControl withoutEscalation = new RectifyLoopControl(6, Duration.ofMinutes(2), 0, 2, "grok-3-mini", "grok-3-mini");
+
+        var decision = withoutEscalation.decide(attempts(1, 1, 1), Duration.ZERO, 0, -1);
+        assertEquals(RectifyLoopControl.Outcome.ABORT, decision.outcome());
+        assertTrue(decision.reason().contains("did not improve"));
+        assertEquals("MATCH #0", RectifyLoopControl.best(attempts(1, 1, 1)).orElseThrow().cypher());
+    }
+}
@@ -0,0 +1,52 @@
+package aldrinm.agent.cache;
+
+import aldrinm.agent.CypherStatementRequest;
+import aldrinm.agent.schema.SchemaCache;
+import aldrinm.agent.schema.SchemaIndex;
+import aldrinm.agent.schema.SchemaSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CypherResultCacheTest {
+
+    private static final CypherStatementRequest MINIFIGS = new CypherStatementRequest("MATCH (m:Minifig) RETURN count(m)");
+
+    private final SchemaCache schemaCache = new SchemaCache(null, null, Duration.ofMinutes(10), Duration.ZERO, false, 2000) {
+        @Override
+        public SchemaSnapshot get() {
+            return new SchemaSnapshot("{}", SchemaIndex.empty(), "fingerprint", Instant.now());
+        }
+    };
+
+    @Test
+    void shouldOnlyWriteTheFileWhenFlushed(@TempDir Path directory) {
+        Path file = directory.resolve("cypher-cache.json");
+        CypherResultCache cache = new CypherResultCache(schemaCache, true, 10, file.toString(), Duration.ZERO);
+        cache.put("How many minifigs are there?", MINIFIGS);
+        assertFalse(Files.exists(file));
+
+        cache.flush();
+        assertTrue(Files.exists(file));
+        CypherResultCache reloaded = new CypherResultCache(schemaCache, true, 10, file.toString(), Duration.ZERO);
+        assertEquals(Optional.of(MINIFIGS), reloaded.get("how many minifigs are there"));
+    }
+
+    @Test
+    void shouldWriteTheFileOnShutdown(@TempDir Path directory) {
+        Path file = directory.resolve("cypher-cache.json");
+        CypherResultCache cache = new CypherResultCache(schemaCache, true, 10, file.toString(), Duration.ofMinutes(10));
+        cache.put("How many minifigs are there?", MINIFIGS);
+        cache.shutdown();
+
+        CypherResultCache reloaded = new CypherResultCache(schemaCache, true, 10, file.toString(), Duration.ZERO);
+        assertEquals(Optional.of(MINIFIGS), reloaded.get("How many minifigs are there?"));
+    }
+}
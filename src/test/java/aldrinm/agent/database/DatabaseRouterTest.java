@@ -0,0 +1,33 @@
+package aldrinm.agent.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseRouterTest {
+
+    private final DatabaseRouter router = new DatabaseRouter(null, null, null, null, null, null, null, null,
+            Optional.empty(), null, true, "lego", "mcp-neo4j-cypher", Duration.ofSeconds(30), Duration.ZERO,
+            List.of("movies"));
+
+    @Test
+    void shouldLeaveQuestionsStartingWithAnUnknownNameAsTheyAre() {
+        DatabaseRouter.Route route = router.route("@batman how many minifigs are there?");
+
+        assertEquals("@batman how many minifigs are there?", route.question());
+        assertEquals("lego", route.database().name());
+        assertEquals("lego", router.route("@system how many users are there?").database().name());
+    }
+
+    @Test
+    void shouldStripTheNameOfTheConfiguredDatabase() {
+        DatabaseRouter.Route route = router.route("@LEGO how many minifigs are there?");
+
+        assertEquals("how many minifigs are there?", route.question());
+        assertEquals("lego", route.database().name());
+    }
+}
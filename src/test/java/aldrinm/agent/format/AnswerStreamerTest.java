@@ -0,0 +1,53 @@
+package aldrinm.agent.format;
+
+import aldrinm.agent.metrics.AgentMetrics;
+import com.embabel.common.ai.model.Llm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AnswerStreamerTest {
+
+    @Test
+    void shouldPassEveryChunkOnAndReturnTheWholeAnswer() {
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.just(chunk("There are "), chunk("42 "), chunk(""), chunk("minifigs."));
+            }
+        };
+        Llm llm = mock(Llm.class);
+        when(llm.getModel()).thenReturn(chatModel);
+        when(llm.getName()).thenReturn("fake");
+        AnswerStreamer streamer = new AnswerStreamer(llm, new AgentMetrics(new SimpleMeterRegistry()), true, Duration.ofSeconds(5));
+
+        List<String> chunks = new ArrayList<>();
+        AnswerStreamer.StreamedAnswer answer = streamer.stream("How many minifigs are available ?", chunks::add);
+
+        assertEquals(List.of("There are ", "42 ", "minifigs."), chunks);
+        assertEquals("There are 42 minifigs.", answer.text());
+        assertEquals(0.0, answer.cost());
+    }
+
+    private static ChatResponse chunk(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+}
@@ -0,0 +1,97 @@
+package aldrinm.agent.format;
+
+import aldrinm.agent.CypherExecutionResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultFormatterTest {
+
+    private final ResultFormatter formatter = new ResultFormatter(true, 10, 4);
+
+    @Test
+    void shouldPhraseCountsFromTheQuestion() {
+        assertEquals("There are 42 minifigs.", formatter.format("How many minifigs are available ?",
+                result(List.of(Map.of("numMinifigs", 42L)), false)).orElseThrow());
+        assertEquals("There is 1 theme.", formatter.format("How many themes are there?",
+                result(List.of(Map.of("count(t)", 1L)), false)).orElseThrow());
+        assertEquals("There are 12 minifigs.", formatter.format("How many are there?",
+                result(List.of(Map.of("numMinifigs", 12L)), false)).orElseThrow());
+    }
+
+    @Test
+    void shouldSkipWordsBetweenHowManyAndWhatIsCounted() {
+        assertEquals("There are 5 themes.", formatter.format("How many of the distinct themes are there?",
+                result(List.of(Map.of("count(t)", 5L)), false)).orElseThrow());
+        assertEquals("There are 5 colors.", formatter.format("how many different colors do we have",
+                result(List.of(Map.of("count(DISTINCT p.color)", 5L)), false)).orElseThrow());
+    }
+
+    @Test
+    void shouldLeaveQualifiedCountsToTheLlm() {
+        assertTrue(formatter.format("How many sets were released in 2005?",
+                result(List.of(Map.of("count(s)", 5L)), false)).isEmpty());
+        assertTrue(formatter.format("How many of the themes have sets from 2020?",
+                result(List.of(Map.of("count(t)", 5L)), false)).isEmpty());
+        assertTrue(formatter.format("Batman minifigs, how many are there?",
+                result(List.of(Map.of("numMinifigs", 12L)), false)).isEmpty());
+        assertTrue(formatter.format("Count the parts of the Batmobile",
+                result(List.of(Map.of("partCount", 7L)), false)).isEmpty());
+        assertTrue(formatter.format("How many are there?",
+                result(List.of(Map.of("count(n)", 7L)), false)).isEmpty());
+    }
+
+    @Test
+    void shouldPhraseOtherSingleValuesFromTheColumn() {
+        assertEquals("The average parts is 12.35.", formatter.format("What is the average number of parts?",
+                result(List.of(Map.of("averageParts", 12.3456)), false)).orElseThrow());
+        assertEquals("The count is 5.", formatter.format("Count the sets of 2020",
+                result(List.of(Map.of("count(s)", 5L)), false)).orElseThrow());
+    }
+
+    @Test
+    void shouldListSmallTables() {
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("s.name", "Batmobile");
+        first.put("s.year", 2019L);
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("s.name", "Batcave");
+        second.put("s.year", 2020L);
+
+        assertEquals("""
+                Here are the 2 results:
+                - name: Batmobile, year: 2019
+                - name: Batcave, year: 2020
+                There may be more results.""", formatter.format("Which batman sets are there?",
+                result(List.of(first, second), true)).orElseThrow());
+    }
+
+    @Test
+    void shouldLeaveNestedAndLargeResultsToTheLlm() {
+        assertTrue(formatter.format("Show me a minifig",
+                result(List.of(Map.of("m", Map.of("name", "Batman"))), false)).isEmpty());
+        assertTrue(formatter.format("List the minifigs",
+                result(Collections.nCopies(11, Map.of("name", "Batman")), false)).isEmpty());
+    }
+
+    @Test
+    void shouldEncodeColumnsOnce() {
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("name", "Batman");
+        first.put("parts", 4L);
+        assertEquals("""
+                columns: ["name","parts"]
+                rows:
+                ["Batman",4]
+                ["Robin",null]""", formatter.encode(result(List.of(first, Map.of("name", "Robin")), false)));
+    }
+
+    private static CypherExecutionResult result(List<Map<String, Object>> rows, boolean truncated) {
+        return new CypherExecutionResult("MATCH (n) RETURN n", rows, truncated);
+    }
+}
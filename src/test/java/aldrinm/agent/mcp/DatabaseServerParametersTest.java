@@ -0,0 +1,38 @@
+package aldrinm.agent.mcp;
+
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseServerParametersTest {
+
+    @Test
+    void shouldReplaceTheDatabaseOfTheEnvironment() {
+        ServerParameters parameters = ServerParameters.builder("python")
+                .args(List.of("cyver-mcp-server.py"))
+                .env(Map.of("NEO4J_URL", "bolt://localhost:7687", "NEO4J_DATABASE", "lego"))
+                .build();
+
+        ServerParameters movies = DatabaseServerParameters.forDatabase(parameters, "movies");
+        assertEquals("python", movies.getCommand());
+        assertEquals(List.of("cyver-mcp-server.py"), movies.getArgs());
+        assertEquals("movies", movies.getEnv().get("NEO4J_DATABASE"));
+        assertEquals("bolt://localhost:7687", movies.getEnv().get("NEO4J_URL"));
+    }
+
+    @Test
+    void shouldReplaceTheDatabaseOfADockerContainer() {
+        ServerParameters parameters = ServerParameters.builder("docker")
+                .args(List.of("run", "-i", "--rm", "-e", "NEO4J_URI=bolt://localhost:7687", "-e", "NEO4J_DATABASE=lego", "mcp/neo4j-cypher:latest"))
+                .build();
+
+        ServerParameters movies = DatabaseServerParameters.forDatabase(parameters, "movies");
+        assertEquals(List.of("run", "-i", "--rm", "-e", "NEO4J_URI=bolt://localhost:7687", "-e", "NEO4J_DATABASE=movies", "mcp/neo4j-cypher:latest"),
+                movies.getArgs());
+        assertNull(movies.getEnv().get("NEO4J_DATABASE"));
+    }
+}
@@ -0,0 +1,97 @@
+package aldrinm.agent.memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CorrectionStoreTest {
+
+    private static final Correction MINIFIG_PARTS = new Correction("lego", "Which minifigs have the most parts?",
+            "MATCH (n:Minifigs) RETURN n.name ORDER BY n.numParts DESC",
+            "Schema Validation Result: {description=Label Minifigs does not exist}; ",
+            "MATCH (n:Minifig) RETURN n.name ORDER BY n.num_parts DESC");
+    private static final Correction THEME_SETS = new Correction("lego", "How many sets does each theme have?",
+            "MATCH (s:Set)-[:IN_THEME]-(t:Themes) RETURN t.name, count(s)",
+            "Schema Validation Result: {description=Label Themes does not exist}; ",
+            "MATCH (s:Set)-[:IN_THEME]->(t:Theme) RETURN t.name, count(s)");
+
+    @Test
+    void shouldFindTheCorrectionsOfSimilarQuestions() {
+        CorrectionStore store = new CorrectionStore(true, "", 1, 0.2);
+        store.record(MINIFIG_PARTS);
+        store.record(THEME_SETS);
+
+        assertEquals(List.of(MINIFIG_PARTS), store.similar("lego", "Which minifigs have the fewest parts?", null));
+        assertEquals(List.of(THEME_SETS), store.similar("lego", "How many sets does the Star Wars theme have?",
+                "Schema Validation Result: {description=Label Themes does not exist}; "));
+        assertTrue(store.similar("lego", "What colour is the sky?", null).isEmpty());
+    }
+
+    @Test
+    void shouldKeepCorrectionsAcrossRestarts(@TempDir Path directory) {
+        String file = directory.resolve("corrections.log").toString();
+        CorrectionStore store = new CorrectionStore(true, file, 3, 0.2);
+        store.record(MINIFIG_PARTS);
+        store.record(THEME_SETS);
+        store.record(MINIFIG_PARTS);
+        store.close();
+
+        CorrectionStore reopened = new CorrectionStore(true, file, 3, 0.2);
+        assertEquals(List.of(MINIFIG_PARTS), reopened.similar("lego", "Which minifigs have the most parts?", null));
+        Correction later = new Correction("lego", "Which sets came out in 2005?", "MATCH (s:Sets) RETURN s", null, "MATCH (s:Set) RETURN s");
+        reopened.record(later);
+        reopened.close();
+
+        CorrectionStore again = new CorrectionStore(true, file, 3, 0.2);
+        assertEquals(List.of(later), again.similar("lego", "Which sets came out in 2010?", null));
+        again.close();
+    }
+
+    @Test
+    void shouldSkipACorruptCorrectionAndKeepThoseAfterIt(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("corrections.log");
+        Correction later = new Correction("lego", "Which sets came out in 2005?", "MATCH (s:Sets) RETURN s", null, "MATCH (s:Set) RETURN s");
+        CorrectionStore store = new CorrectionStore(true, file.toString(), 3, 0.2);
+        store.record(MINIFIG_PARTS);
+        store.record(THEME_SETS);
+        store.record(later);
+        store.close();
+        //break the JSON of the correction in the middle, leaving its length alone
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            int first = raf.readInt();
+            raf.seek(Integer.BYTES + first + Integer.BYTES);
+            raf.write('x');
+        }
+
+        CorrectionStore reopened = new CorrectionStore(true, file.toString(), 3, 0.2);
+        assertEquals(List.of(MINIFIG_PARTS), reopened.similar("lego", "Which minifigs have the most parts?", null));
+        assertTrue(reopened.similar("lego", "How many sets does each theme have?", null).isEmpty());
+        Correction newest = new Correction("lego", "Which parts are red?", "MATCH (p:Parts) RETURN p", null, "MATCH (p:Part) RETURN p");
+        reopened.record(newest);
+        reopened.close();
+
+        CorrectionStore again = new CorrectionStore(true, file.toString(), 3, 0.2);
+        assertEquals(List.of(later), again.similar("lego", "Which sets came out in 2010?", null));
+        assertEquals(List.of(newest), again.similar("lego", "Which parts are blue?", null));
+        again.close();
+    }
+
+    @Test
+    void shouldOnlyFindTheCorrectionsOfTheSameDatabase() {
+        CorrectionStore store = new CorrectionStore(true, "", 3, 0.2);
+        store.record(MINIFIG_PARTS);
+        Correction movies = new Correction("movies", "Which movies have the most actors?",
+                "MATCH (m:Movies)<-[:ACTED_IN]-(p) RETURN m.title, count(p)", null,
+                "MATCH (m:Movie)<-[:ACTED_IN]-(p) RETURN m.title, count(p)");
+        store.record(movies);
+
+        assertEquals(List.of(movies), store.similar("movies", "Which movies have the most parts?", null));
+        assertEquals(List.of(MINIFIG_PARTS), store.similar("lego", "Which movies have the most parts?", null));
+    }
+}
@@ -0,0 +1,54 @@
+package aldrinm.agent.recording;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallRecorderTest {
+
+    record Answer(String cypher) {
+    }
+
+    @Test
+    void shouldReplayWhatWasRecorded(@TempDir Path directory) {
+        CallRecorder recorder = new CallRecorder("record", directory.toString(), Duration.ZERO, Duration.ZERO);
+        AtomicInteger liveCalls = new AtomicInteger();
+        assertEquals(new Answer("MATCH (n) RETURN n"), recorder.llm("createObject", "Build a cypher query", Answer.class, () -> {
+            liveCalls.incrementAndGet();
+            return new Answer("MATCH (n) RETURN n");
+        }));
+        assertEquals("[{\"text\":\"ok\"}]", recorder.tool("cyver", "validate_cypher_syntax", "{\"query\":\"MATCH (n) RETURN n\"}", () -> {
+            liveCalls.incrementAndGet();
+            return "[{\"text\":\"ok\"}]";
+        }));
+        recorder.close();
+
+        CallRecorder replayer = new CallRecorder("replay", directory.toString(), Duration.ZERO, Duration.ZERO);
+        assertTrue(replayer.isReplaying());
+        assertEquals(new Answer("MATCH (n) RETURN n"), replayer.llm("createObject", "Build a cypher query", Answer.class,
+                () -> fail("replays must not call the LLM")));
+        assertEquals("[{\"text\":\"ok\"}]", replayer.tool("cyver", "validate_cypher_syntax", "{\"query\":\"MATCH (n) RETURN n\"}",
+                () -> fail("replays must not call the tool")));
+        assertThrows(RuntimeException.class, () -> replayer.llm("createObject", "Another prompt", Answer.class,
+                () -> fail("replays must not call the LLM")));
+        assertEquals(2, liveCalls.get());
+        replayer.close();
+    }
+
+    @Test
+    void shouldKeepTheFirstRecordingOfACall(@TempDir Path directory) {
+        CallRecorder recorder = new CallRecorder("record", directory.toString(), Duration.ZERO, Duration.ZERO);
+        recorder.llm("generateText", "Format this", String.class, () -> "first");
+        recorder.llm("generateText", "Format this", String.class, () -> "second");
+        recorder.close();
+
+        CallRecorder replayer = new CallRecorder("replay", directory.toString(), Duration.ZERO, Duration.ZERO);
+        assertEquals("first", replayer.llm("generateText", "Format this", String.class, () -> "live"));
+        replayer.close();
+    }
+}
@@ -0,0 +1,96 @@
+package aldrinm.agent.repair;
+
+import aldrinm.agent.ValidationReport;
+import aldrinm.agent.cyver.CyverSyntaxValidatonResult;
+import aldrinm.agent.schema.SchemaIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CypherRepairerTest {
+
+    private static final SchemaIndex INDEX = SchemaIndex.parse("""
+            {
+              "Minifig": {"type": "node", "properties": {"name": {"type": "STRING"}, "num_parts": {"type": "INTEGER"}},
+                          "relationships": {"HAS_PART": {"direction": "out", "labels": ["Part"]},
+                                            "APPEARS_IN": {"direction": "out", "labels": ["Set"]}}},
+              "Part": {"type": "node", "properties": {"name": {"type": "STRING"}, "color": {"type": "STRING"}},
+                       "relationships": {"HAS_PART": {"direction": "in", "labels": ["Minifig"]}}},
+              "Set": {"type": "node", "properties": {"name": {"type": "STRING"}, "year": {"type": "INTEGER"}},
+                      "relationships": {"IN_THEME": {"direction": "out", "labels": ["Theme"]}}},
+              "Theme": {"type": "node", "properties": {"name": {"type": "STRING"}}},
+              "HAS_PART": {"type": "relationship", "properties": {"quantity": {"type": "INTEGER"}}}
+            }
+            """, new ObjectMapper());
+
+    private static ValidationReport schemaFailed(String... descriptions) {
+        return new ValidationReport(
+                new CyverSyntaxValidatonResult("syntax", "", true, 1.0f, List.of()),
+                new CyverSyntaxValidatonResult("schema", "", false, 0.5f,
+                        Arrays.stream(descriptions).map(d -> Map.<String, Object>of("description", d)).toList()),
+                null);
+    }
+
+    @Test
+    void shouldRepairLabelCaseAndMisspelledProperties() {
+        Optional<CypherRepairer.Repair> repair = CypherRepairer.repair(
+                "MATCH (n:minifig) WHERE n.numParts > 3 RETURN n.nmae",
+                schemaFailed("The label `minifig` does not exist", "The property `numParts` does not exist",
+                        "The property `nmae` does not exist"), INDEX);
+
+        assertTrue(repair.isPresent());
+        assertEquals("MATCH (n:Minifig) WHERE n.num_parts > 3 RETURN n.name", repair.get().cypher());
+        assertEquals(3, repair.get().changes().size());
+    }
+
+    @Test
+    void shouldReverseRelationshipsDrawnAgainstTheSchema() {
+        Optional<CypherRepairer.Repair> repair = CypherRepairer.repair(
+                "MATCH (p:Part)-[r:HAS_PART]->(m:Minifig) RETURN m.name, r.quantity",
+                schemaFailed("The relationship (:Part)-[:HAS_PART]->(:Minifig) does not exist"), INDEX);
+
+        assertTrue(repair.isPresent());
+        assertEquals("MATCH (p:Part)<-[r:HAS_PART]-(m:Minifig) RETURN m.name, r.quantity", repair.get().cypher());
+    }
+
+    @Test
+    void shouldLeaveStringsAndMapValuesAlone() {
+        Optional<CypherRepairer.Repair> repair = CypherRepairer.repair(
+                "MATCH (m:Minifigs {nam: 'minifig'})-[:APPEARS_IN]->(s:Set) RETURN {name: s.name} AS set",
+                schemaFailed("Label Minifigs does not exist", "the missing property name is: nam"), INDEX);
+
+        assertTrue(repair.isPresent());
+        assertEquals("MATCH (m:Minifig {name: 'minifig'})-[:APPEARS_IN]->(s:Set) RETURN {name: s.name} AS set", repair.get().cypher());
+    }
+
+    @Test
+    void shouldOnlyRepairTheNamesTheValidatorsReported() {
+        Optional<CypherRepairer.Repair> repair = CypherRepairer.repair(
+                "MATCH (n:minifig) RETURN n.nmae AS nmae", schemaFailed("The label `minifig` does not exist"), INDEX);
+
+        assertTrue(repair.isPresent());
+        assertEquals("MATCH (n:Minifig) RETURN n.nmae AS nmae", repair.get().cypher());
+        assertTrue(CypherRepairer.repair("MATCH (n:minifig) RETURN n", schemaFailed("Unknown label"), INDEX).isEmpty());
+    }
+
+    @Test
+    void shouldNotGuessNamesThatAreNotClose() {
+        assertTrue(CypherRepairer.repair("MATCH (d:Dinosaur) RETURN d.name",
+                schemaFailed("The label `Dinosaur` does not exist"), INDEX).isEmpty());
+    }
+
+    @Test
+    void shouldLeaveSyntaxErrorsToTheLlm() {
+        ValidationReport syntaxFailed = new ValidationReport(
+                new CyverSyntaxValidatonResult("syntax", "", false, 0.0f, List.of(Map.of("description", "Invalid input"))),
+                null, null);
+
+        assertTrue(CypherRepairer.repair("MATCH (n:minifig RETURN n", syntaxFailed, INDEX).isEmpty());
+    }
+}
@@ -0,0 +1,58 @@
+package aldrinm.agent.schema;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaIndexTest {
+
+    private static final String SCHEMA = """
+            {
+              "Minifig": {"type": "node", "properties": {"name": {"type": "STRING"}, "num_parts": {"type": "INTEGER"}},
+                          "relationships": {"HAS_PART": {"direction": "out", "labels": ["Part"]},
+                                            "APPEARS_IN": {"direction": "out", "labels": ["Set"]}}},
+              "Part": {"type": "node", "properties": {"name": {"type": "STRING"}, "color": {"type": "STRING"}},
+                       "relationships": {"HAS_PART": {"direction": "in", "labels": ["Minifig"]}}},
+              "Set": {"type": "node", "properties": {"name": {"type": "STRING"}, "year": {"type": "INTEGER"}},
+                      "relationships": {"IN_THEME": {"direction": "out", "labels": ["Theme"]}}},
+              "Theme": {"type": "node", "properties": {"name": {"type": "STRING"}}},
+              "HAS_PART": {"type": "relationship", "properties": {"quantity": {"type": "INTEGER"}}}
+            }
+            """;
+
+    @Test
+    void shouldParseLabelsRelationshipsAndPatterns() {
+        SchemaIndex index = SchemaIndex.parse(SCHEMA, new ObjectMapper());
+
+        assertEquals(4, index.labels().size());
+        assertEquals(3, index.relationshipTypes().size());
+        assertTrue(index.patterns().contains(new SchemaIndex.RelationshipPattern("Minifig", "HAS_PART", "Part")));
+        assertTrue(index.patterns().contains(new SchemaIndex.RelationshipPattern("Set", "IN_THEME", "Theme")));
+    }
+
+    @Test
+    void shouldRenderOnlyTheRelevantPartOfTheSchema() {
+        SchemaIndex index = SchemaIndex.parse(SCHEMA, new ObjectMapper());
+
+        String schema = index.render(2000, "How many minifigs are available ?");
+        assertTrue(schema.contains("Minifig {name: STRING, num_parts: INTEGER}"));
+        assertTrue(schema.contains("(:Minifig)-[:HAS_PART]->(:Part)"));
+        assertFalse(schema.contains("Theme"));
+    }
+
+    @Test
+    void shouldNotSelectLabelsOnlyForSharingAProperty() {
+        SchemaIndex index = SchemaIndex.parse(SCHEMA, new ObjectMapper());
+
+        String schema = index.render(2000, "What is the name of each theme?", "MATCH (t:Themes) RETURN t.name");
+        assertTrue(schema.contains("Theme {name: STRING}"));
+        assertFalse(schema.contains("Minifig"));
+        assertFalse(schema.contains("Part {"));
+    }
+
+    @Test
+    void shouldNotIndexSchemaThatIsNotJson() {
+        assertTrue(SchemaIndex.parse("Labels: Minifig, Part", new ObjectMapper()).isEmpty());
+    }
+}
@@ -0,0 +1,40 @@
+package aldrinm.agent.validation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CypherNormalizerTest {
+
+    @Test
+    void shouldIgnoreLayoutCommentsKeywordCaseAndQuotes() {
+        String cypher = """
+                match (n:Minifig)
+                // only Luke
+                where n.name contains "Luke"
+                return n.name;
+                """;
+
+        assertEquals("MATCH ( v0 : Minifig ) WHERE v0 . name CONTAINS 'Luke' RETURN v0 . name", CypherNormalizer.normalize(cypher));
+        assertEquals(CypherNormalizer.key(cypher), CypherNormalizer.key("MATCH (m:`Minifig`) WHERE m.name CONTAINS 'Luke' RETURN m.name"));
+    }
+
+    @Test
+    void shouldIgnoreTheNamesOfVariablesAndAliases() {
+        assertEquals(CypherNormalizer.key("MATCH (n:Minifig)-[r:HAS_PART]->(p:Part) RETURN n.name AS name, count(p) AS parts"),
+                CypherNormalizer.key("MATCH (m:Minifig)-[rel:HAS_PART]->(part:Part) RETURN m.name AS minifig, COUNT(part) AS numParts"));
+        assertEquals(CypherNormalizer.key("MATCH (t:Theme) WITH t, [s IN t.sets | s.name] AS names RETURN t.name, names"),
+                CypherNormalizer.key("MATCH (x:Theme) WITH x, [y IN x.sets | y.name] AS z RETURN x.name, z"));
+    }
+
+    @Test
+    void shouldTellApartStatementsThatMeanSomethingElse() {
+        String cypher = "MATCH (n:Minifig {name: 'Luke'})-[:HAS_PART]->(p) RETURN p.name LIMIT 20";
+
+        assertNotEquals(CypherNormalizer.key(cypher), CypherNormalizer.key("MATCH (n:Minifigs {name: 'Luke'})-[:HAS_PART]->(p) RETURN p.name LIMIT 20"));
+        assertNotEquals(CypherNormalizer.key(cypher), CypherNormalizer.key("MATCH (n:Minifig {name: 'luke'})-[:HAS_PART]->(p) RETURN p.name LIMIT 20"));
+        assertNotEquals(CypherNormalizer.key(cypher), CypherNormalizer.key("MATCH (n:Minifig {title: 'Luke'})-[:HAS_PART]->(p) RETURN p.name LIMIT 20"));
+        assertNotEquals(CypherNormalizer.key(cypher), CypherNormalizer.key("MATCH (n:Minifig {name: 'Luke'})<-[:HAS_PART]-(p) RETURN p.name LIMIT 20"));
+        assertNotEquals(CypherNormalizer.key(cypher), CypherNormalizer.key("MATCH (n:Minifig {name: 'Luke'})-[:HAS_PART]->(p) RETURN p.name LIMIT 10"));
+    }
+}
@@ -0,0 +1,66 @@
+package aldrinm.agent.validation;
+
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.summary.Plan;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CypherPlanGuardTest {
+
+    private record TestPlan(String operatorType, Map<String, Value> arguments, List<String> identifiers,
+                            List<TestPlan> children) implements Plan {
+    }
+
+    private static TestPlan plan(String operator, String details, double estimatedRows, TestPlan... children) {
+        return new TestPlan(operator + "@neo4j", Map.of("Details", Values.value(details), "EstimatedRows", Values.value(estimatedRows)),
+                List.of(), List.of(children));
+    }
+
+    @Test
+    void shouldAcceptCheapPlans() {
+        TestPlan plan = plan("ProduceResults", "numMinifigs", 1,
+                plan("NodeCountFromCountStore", "count( (:Minifig) ) AS numMinifigs", 1));
+
+        assertTrue(CypherPlanGuard.inspect(plan, 1_000_000, 10_000).isEmpty());
+    }
+
+    @Test
+    void shouldReportCartesianProductsAndUnboundedPaths() {
+        TestPlan plan = plan("ProduceResults", "m, t", 20,
+                plan("CartesianProduct", "", 5000,
+                        plan("VarLengthExpand(All)", "(m)-[anon_0*..]->(s)", 2000,
+                                plan("NodeByLabelScan", "m:Minifig", 100)),
+                        plan("NodeByLabelScan", "t:Theme", 50)));
+
+        List<String> findings = CypherPlanGuard.inspect(plan, 1_000_000, 10_000);
+        assertEquals(2, findings.size());
+        assertTrue(findings.get(0).contains("cartesian product"));
+        assertTrue(findings.get(1).contains("(m)-[anon_0*..]->(s)"));
+    }
+
+    @Test
+    void shouldNotReportBoundedPaths() {
+        TestPlan plan = plan("ProduceResults", "s", 20,
+                plan("VarLengthExpand(All)", "(m)-[anon_0*1..3]->(s)", 200,
+                        plan("NodeByLabelScan", "m:Minifig", 100)));
+
+        assertTrue(CypherPlanGuard.inspect(plan, 1_000_000, 10_000).isEmpty());
+    }
+
+    @Test
+    void shouldReportLargeFilteredLabelScansAndRowEstimates() {
+        TestPlan plan = plan("ProduceResults", "p", 5_000_000,
+                plan("Filter", "p.color = $autostring_0", 5_000_000,
+                        plan("NodeByLabelScan", "p:Part", 50_000_000)));
+
+        List<String> findings = CypherPlanGuard.inspect(plan, 1_000_000, 10_000);
+        assertEquals(2, findings.size());
+        assertTrue(findings.get(0).contains("p.color"));
+        assertTrue(findings.get(1).contains("50000000 rows at NodeByLabelScan"));
+    }
+}
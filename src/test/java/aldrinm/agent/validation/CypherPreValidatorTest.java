@@ -0,0 +1,56 @@
+package aldrinm.agent.validation;
+
+import aldrinm.agent.cyver.CyverSyntaxValidatonResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CypherPreValidatorTest {
+
+    @Test
+    void shouldAcceptPlausibleQueries() {
+        assertTrue(CypherPreValidator.validate("MATCH (n:Minifig) RETURN count(n) as numMinifigs").isEmpty());
+        assertTrue(CypherPreValidator.validate("""
+                MATCH (m:Minifig)-[:HAS_PART]->(p:Part)
+                WHERE toLower(m.name) CONTAINS toLower("darth (vader")
+                RETURN m.name, collect(p.name)[0..5] AS parts // first few ]
+                LIMIT 20
+                """).isEmpty());
+        assertTrue(CypherPreValidator.validate("CREATE (n:Minifig {name: 'Luke'})").isEmpty());
+        assertTrue(CypherPreValidator.validate("CALL db.labels()").isEmpty());
+    }
+
+    @Test
+    void shouldRejectMarkdownFences() {
+        Optional<CyverSyntaxValidatonResult> result = CypherPreValidator.validate("```cypher\nMATCH (n) RETURN n\n```");
+        assertTrue(result.isPresent());
+        assertFalse(result.get().isValid());
+        assertEquals("PreValidation.MarkdownFence", result.get().metadata().get(0).get("code"));
+    }
+
+    @Test
+    void shouldRejectUnbalancedBrackets() {
+        Optional<CyverSyntaxValidatonResult> result = CypherPreValidator.validate("MATCH (n:Minifig RETURN n");
+        assertTrue(result.isPresent());
+        assertEquals("PreValidation.UnbalancedBrackets", result.get().metadata().get(0).get("code"));
+
+        assertTrue(CypherPreValidator.validate("MATCH (n)-[r:HAS_PART)->(p) RETURN n").isPresent());
+        assertTrue(CypherPreValidator.validate("MATCH (n) WHERE n.name = 'Luke RETURN n").isPresent());
+    }
+
+    @Test
+    void shouldRejectQueriesWithoutReturn() {
+        Optional<CyverSyntaxValidatonResult> result = CypherPreValidator.validate("MATCH (n:Minifig) WHERE n.name CONTAINS 'Luke'");
+        assertTrue(result.isPresent());
+        assertEquals("PreValidation.MissingReturn", result.get().metadata().get(0).get("code"));
+    }
+
+    @Test
+    void shouldRejectProseAroundTheQuery() {
+        Optional<CyverSyntaxValidatonResult> result = CypherPreValidator.validate("Here is the query: MATCH (n) RETURN n");
+        assertTrue(result.isPresent());
+        assertEquals("PreValidation.InvalidStart", result.get().metadata().get(0).get("code"));
+    }
+}
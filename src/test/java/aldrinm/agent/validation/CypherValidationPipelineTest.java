@@ -0,0 +1,32 @@
+package aldrinm.agent.validation;
+
+import aldrinm.agent.cyver.CyverSyntaxValidatonResult;
+import aldrinm.agent.metrics.AgentMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CypherValidationPipelineTest {
+
+    @Test
+    void shouldNotPassCypherWhoseSyntaxIsNeitherValidNorInvalid() {
+        CypherValidationPipeline pipeline = new CypherValidationPipeline(null, null,
+                new AgentMetrics(new SimpleMeterRegistry()), null, Duration.ofSeconds(5), false) {
+            @Override
+            CyverSyntaxValidatonResult validateCypherWithTool(String cypherStatement, String toolName) {
+                return new CyverSyntaxValidatonResult(toolName, cypherStatement, null, null, List.of());
+            }
+        };
+        try {
+            ValidationInconclusiveException ex = assertThrows(ValidationInconclusiveException.class,
+                    () -> pipeline.validate("MATCH (n:Minifig) RETURN count(n)"));
+            assertEquals(List.of(CypherValidationPipeline.SYNTAX_VALIDATOR), ex.validators());
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+}